@@ -1,5 +1,3 @@
-import java.util.Vector;
-
 /**
  * Monitor that synchronizes access to forks in dining philosophers problem.
  * @author David Lin
@@ -11,7 +9,7 @@ public class ForkMonitor {
   private int forks[];
   
   /** Philosopher queue, denoted by index. */
-  private Vector<Integer> queue;
+  private IntRingQueue queue;
 
   /**
    * Initialize monitor data items.
@@ -25,7 +23,7 @@ public class ForkMonitor {
       // 1 = available, 0 = taken
       forks[i] = 1;
     }
-    queue = new Vector<Integer>(0);
+    queue = new IntRingQueue(numForks);
   }
 
   /**
@@ -37,19 +35,22 @@ public class ForkMonitor {
   public synchronized void pickupForks(int phil, int leftFork, int rightFork) {
     queue.add(phil);
     // Only philosophers at head of queue can try to pick up forks to eat
-    while (phil != queue.get(0) || forks[leftFork] == 0 || forks[rightFork] == 0) {
+    while (phil != queue.peek() || forks[leftFork] == 0 || forks[rightFork] == 0) {
       //printQueue();
       try {
         wait();
       }
       catch (InterruptedException e) {
+        // Leave the queue so the philosophers behind can move up
+        queue.remove(phil);
+        notifyAll();
         return;
       }
     }
     
     // Philosopher can eat so remove from queue
-    if (phil == queue.get(0)) {
-      queue.remove(0);
+    if (phil == queue.peek()) {
+      queue.poll();
       // New philosopher arrives at head of queue, give it opportunity to eat
       notifyAll();
     }
@@ -79,10 +80,6 @@ public class ForkMonitor {
    * Print the queue of philosophers.
    */
   public void printQueue() {
-    System.out.print("Queue: ");
-    for (int i = 0; i < queue.size(); i++) {
-      System.out.print(queue.get(i) + " ");
-    }
-    System.out.println();
+    System.out.println("Queue: " + queue);
   }
 }
@@ -0,0 +1,320 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Event sink that takes writing off the caller's thread. Any number of
+ * philosophers claim slots in a lock-free ring buffer with a compare-and-set on
+ * the tail and publish them by sequence number; a single background thread
+ * drains whatever has been published in batches and hands it to a Writer,
+ * flushing once per batch. Reporting an event costs a CAS and a few stores.
+ * <p>
+ * When the ring is full, a philosopher waits for the writer to catch up, so no
+ * event is lost, at the cost of stalling the table behind a slow disk or
+ * terminal. A lossy sink drops the event instead; the writer then gets a
+ * dropped record with the count, so the gap shows up in the output. close()
+ * shuts the ring with a flag in the tail, so no slot can be claimed after it,
+ * and writes every event claimed before it. Events reported after close() are
+ * dropped and counted either way.
+ * @author David Lin
+ */
+public class AsyncEventSink implements EventSink {
+
+  /** Event types. */
+  public static final int TAKEN = 0;
+  public static final int AVAILABLE = 1;
+  public static final int DROPPED = 2;
+
+  private static final int CAPACITY = 1 << 16;
+  private static final int MASK = CAPACITY - 1;
+
+  /** How long the drain thread sleeps when there is nothing to write. */
+  private static final long IDLE_NANOS = 1000000L;
+
+  /** How long a philosopher waits before looking for free slots again. */
+  private static final long FULL_NANOS = 10000L;
+
+  /** Set in the tail once closed, no slot can be claimed after that. */
+  private static final long CLOSED = Long.MIN_VALUE;
+
+  /** Ring slots, valid once published holds the slot's sequence number. */
+  private long times[];
+  private int types[];
+  private int forks[];
+  private int phils[];
+  private AtomicLongArray published;
+
+  /** Next sequence to claim, and next sequence to drain. */
+  private AtomicLong tail;
+  private volatile long head;
+
+  private boolean lossy;
+  private LongAdder dropped;
+  private long reportedDropped;
+  private Writer writer;
+  private Thread drainer;
+  private volatile boolean closed;
+  private volatile boolean failed;
+
+  /** Sequence after the last slot claimed, set before closed. */
+  private volatile long end;
+
+  /**
+   * Start a sink draining into a writer that keeps every event.
+   * @param writer Where events end up
+   */
+  public AsyncEventSink(Writer writer) {
+    this(writer, false);
+  }
+
+  /**
+   * Start a sink draining into a writer.
+   * @param writer Where events end up
+   * @param lossy true to drop events when the ring is full, false to wait
+   */
+  public AsyncEventSink(Writer writer, boolean lossy) {
+    this.writer = writer;
+    this.lossy = lossy;
+    times = new long[CAPACITY];
+    types = new int[CAPACITY];
+    forks = new int[CAPACITY];
+    phils = new int[CAPACITY];
+    published = new AtomicLongArray(CAPACITY);
+    for (int i = 0; i < CAPACITY; i++) {
+      published.set(i, -1);
+    }
+    tail = new AtomicLong();
+    dropped = new LongAdder();
+    drainer = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, "event-sink");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public void forkTaken(int fork, int phil) {
+    offer(TAKEN, fork, phil);
+  }
+
+  @Override
+  public void forkAvailable(int fork, int phil) {
+    offer(AVAILABLE, fork, phil);
+  }
+
+  /**
+   * Put an event in the ring. If the ring is full, wait for a free slot, or
+   * drop the event if the sink is lossy.
+   */
+  private void offer(int type, int fork, int phil) {
+    long seq;
+    while (true) {
+      seq = tail.get();
+      if ((seq & CLOSED) != 0) {
+        dropped.increment();
+        return;
+      }
+      if (seq - head < CAPACITY) {
+        if (tail.compareAndSet(seq, seq + 1)) {
+          break;
+        }
+      }
+      else if (lossy) {
+        dropped.increment();
+        return;
+      }
+      else {
+        LockSupport.parkNanos(FULL_NANOS);
+      }
+    }
+    int slot = (int) seq & MASK;
+    times[slot] = System.nanoTime();
+    types[slot] = type;
+    forks[slot] = fork;
+    phils[slot] = phil;
+    published.lazySet(slot, seq);
+  }
+
+  /**
+   * Background thread: write published events in batches until closed.
+   */
+  private void drain() {
+    while (true) {
+      boolean wasClosed = closed;
+      int written = drainBatch();
+      if (failed) {
+        break;
+      }
+      if (written == 0) {
+        // Once closed, finish only when every claimed slot has been written
+        if (wasClosed && head >= end) {
+          break;
+        }
+        LockSupport.parkNanos(wasClosed ? FULL_NANOS : IDLE_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Write every event published so far in sequence order.
+   * @return Number of events written
+   */
+  private int drainBatch() {
+    long seq = head;
+    int written = 0;
+    try {
+      while (true) {
+        int slot = (int) seq & MASK;
+        if (published.get(slot) != seq) {
+          break;
+        }
+        writer.write(times[slot], types[slot], forks[slot], phils[slot]);
+        seq++;
+        written++;
+        if ((written & (CAPACITY / 4 - 1)) == 0) {
+          // Free slots for producers before finishing a long batch
+          head = seq;
+        }
+      }
+      head = seq;
+      // Mark the gap where events were dropped since the last batch
+      long lost = dropped.sum() - reportedDropped;
+      if (lost > 0) {
+        int count = (int) Math.min(lost, Integer.MAX_VALUE);
+        writer.write(System.nanoTime(), DROPPED, count, -1);
+        reportedDropped += count;
+      }
+      writer.flush();
+    }
+    catch (IOException e) {
+      System.out.println("Event sink failed: " + e.getMessage());
+      end = closeTail();
+      closed = true;
+      failed = true;
+    }
+    return written;
+  }
+
+  /**
+   * Stop accepting events, write out what is pending and close the writer.
+   */
+  @Override
+  public void close() {
+    end = closeTail();
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join();
+      writer.close();
+    }
+    catch (InterruptedException | IOException e) {
+      // Nothing more can be written
+    }
+    if (dropped.sum() > 0) {
+      System.out.println("Event sink dropped " + dropped.sum() + " events");
+    }
+  }
+
+  /**
+   * Stop philosophers from claiming slots. Those that claimed one before still
+   * publish it.
+   * @return Sequence after the last slot claimed
+   */
+  private long closeTail() {
+    while (true) {
+      long seq = tail.get();
+      if ((seq & CLOSED) != 0 || tail.compareAndSet(seq, seq | CLOSED)) {
+        return seq & ~CLOSED;
+      }
+    }
+  }
+
+  /**
+   * Formats and stores drained events. Only called from the drain thread. A
+   * DROPPED event carries the number of events lost in place of the fork.
+   */
+  public interface Writer {
+    void write(long time, int type, int fork, int phil) throws IOException;
+
+    void flush() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  /**
+   * Writes events as text lines in the format the display has always printed.
+   */
+  public static class TextWriter implements Writer {
+    private PrintStream out;
+    private boolean closeStream;
+
+    public TextWriter(PrintStream out, boolean closeStream) {
+      this.out = out;
+      this.closeStream = closeStream;
+    }
+
+    static TextWriter toFile(String file) throws IOException {
+      return new TextWriter(new PrintStream(new BufferedOutputStream(
+          new FileOutputStream(file)), false), true);
+    }
+
+    public void write(long time, int type, int fork, int phil) {
+      if (type == TAKEN) {
+        out.println("Philosopher" + phil + " takes fork " + fork);
+      }
+      else if (type == DROPPED) {
+        out.println(fork + " events dropped");
+      }
+      else {
+        out.println("Philosopher " + phil + " relases fork " + fork);
+      }
+    }
+
+    public void flush() {
+      out.flush();
+    }
+
+    public void close() {
+      out.flush();
+      if (closeStream) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Writes events as fixed size big-endian records: nanoTime (8 bytes), type
+   * (1 byte, 0 taken, 1 available or 2 dropped), fork or number of events
+   * dropped (4 bytes), philosopher (4 bytes, -1 for dropped).
+   */
+  public static class BinaryWriter implements Writer {
+    private DataOutputStream out;
+
+    public BinaryWriter(String file) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    public void write(long time, int type, int fork, int phil) throws IOException {
+      out.writeLong(time);
+      out.writeByte(type);
+      out.writeInt(fork);
+      out.writeInt(phil);
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
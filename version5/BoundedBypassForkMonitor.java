@@ -0,0 +1,198 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork monitor that sits between version4 and version5. Like version5, a hungry
+ * philosopher may eat whenever its forks are free, even if a neighbour has been
+ * waiting longer. Each time that happens the waiting neighbour is overtaken, and
+ * after being overtaken k times the monitor reserves its forks for it: no
+ * neighbour that got hungry after it may take a fork they share until it has
+ * eaten. Reservations follow arrival order, so they can never wait on each
+ * other around the table.
+ * <p>
+ * A limit of 0 means neighbours never cut in, and a very large limit behaves
+ * like version5. Seat i uses forks i and i - 1, as set up by DiningPhilosophersV5.
+ * @author David Lin
+ */
+public class BoundedBypassForkMonitor implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private int numPhils;
+  private int bypassLimit;
+  private int forks[];
+  private ReentrantLock lock;
+  private Condition philConditions[];
+
+  /** Hungry philosophers, when they got hungry and how often they were overtaken. */
+  private boolean hungry[];
+  private long arrival[];
+  private long nextArrival;
+  private int bypassed[];
+
+  /** Philosophers that have been handed their forks but not yet returned. */
+  private boolean granted[];
+
+  /** Run statistics. */
+  private int maxBypassed;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   * @param bypassLimit How many times a waiting philosopher can be overtaken, 0 or more
+   * @throws IllegalArgumentException if bypassLimit is negative
+   */
+  public BoundedBypassForkMonitor(TableListener listener, int numForks,
+      int bypassLimit) {
+    if (bypassLimit < 0) {
+      throw new IllegalArgumentException("Negative bypass limit " + bypassLimit);
+    }
+    this.listener = listener;
+    this.numPhils = numForks;
+    this.bypassLimit = bypassLimit;
+    forks = new int[numForks];
+    lock = new ReentrantLock();
+    philConditions = new Condition[numForks];
+    hungry = new boolean[numForks];
+    arrival = new long[numForks];
+    bypassed = new int[numForks];
+    granted = new boolean[numForks];
+    for (int i = 0; i < forks.length; i++) {
+      // 1 = available, 0 = taken
+      forks[i] = 1;
+      philConditions[i] = lock.newCondition();
+    }
+  }
+
+  /**
+   * Pick up left and right forks, waiting to be handed them if they are taken.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      hungry[phil] = true;
+      arrival[phil] = nextArrival++;
+      bypassed[phil] = 0;
+      if (canEat(phil)) {
+        grant(phil);
+      }
+      while (!granted[phil]) {
+        philConditions[phil].awaitUninterruptibly();
+      }
+      granted[phil] = false;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Put down left and right forks and hand them on to whoever can now eat.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      forks[leftFork] = 1;
+      forks[rightFork] = 1;
+      listener.setForkAvailable(leftFork);
+      listener.setForkAvailable(rightFork);
+      // Fork i is shared by philosophers i and i + 1, longest waiter first
+      int first = (leftFork + 1) % numPhils;
+      int second = rightFork;
+      if (hungry[second] && (!hungry[first] || arrival[second] < arrival[first])) {
+        first = rightFork;
+        second = (leftFork + 1) % numPhils;
+      }
+      if (hungry[first] && canEat(first)) {
+        grant(first);
+      }
+      if (hungry[second] && canEat(second)) {
+        grant(second);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Check whether both of a philosopher's forks are free and not reserved for
+   * a neighbour that has been overtaken too often.
+   * @param phil Philosopher's index on table
+   * @return true if the philosopher may eat
+   */
+  private boolean canEat(int phil) {
+    int leftFork = phil;
+    int rightFork = (phil + numPhils - 1) % numPhils;
+    return forks[leftFork] == 1 && forks[rightFork] == 1
+        && !reservedAgainst((phil + 1) % numPhils, phil)
+        && !reservedAgainst(rightFork, phil);
+  }
+
+  /**
+   * Check whether a neighbour's reservation keeps a philosopher from eating.
+   * @param neighbour Philosopher sharing a fork with phil
+   * @param phil Philosopher's index on table
+   * @return true if the neighbour got hungry first and has reached the limit
+   */
+  private boolean reservedAgainst(int neighbour, int phil) {
+    return neighbour != phil && hungry[neighbour] && bypassed[neighbour] >= bypassLimit
+        && arrival[neighbour] < arrival[phil];
+  }
+
+  /**
+   * Assign both forks to a philosopher, wake it up, and charge the overtake to
+   * any neighbour that was waiting longer.
+   * @param phil Philosopher's index on table
+   */
+  private void grant(int phil) {
+    int leftFork = phil;
+    int rightFork = (phil + numPhils - 1) % numPhils;
+    forks[leftFork] = 0;
+    forks[rightFork] = 0;
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+    hungry[phil] = false;
+    granted[phil] = true;
+    philConditions[phil].signal();
+
+    overtake(phil, (phil + 1) % numPhils);
+    overtake(phil, rightFork);
+  }
+
+  /**
+   * Count an overtake against a hungry neighbour that was waiting longer.
+   * @param phil Philosopher that was just granted forks
+   * @param neighbour Philosopher sharing a fork with it
+   */
+  private void overtake(int phil, int neighbour) {
+    if (neighbour != phil && hungry[neighbour] && arrival[neighbour] < arrival[phil]) {
+      bypassed[neighbour]++;
+      maxBypassed = Math.max(maxBypassed, bypassed[neighbour]);
+    }
+  }
+
+  /**
+   * Print the worst overtaking seen. Meal throughput is left to the table's
+   * own report, so a run prints a single figure for it.
+   */
+  @Override
+  public void printStats() {
+    lock.lock();
+    try {
+      System.out.println("Bypass limit: " + bypassLimit + ", most times overtaken: "
+          + maxBypassed);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free fork arbiter. Fork ownership is a bitmap packed 64 forks to a word
+ * (bit set = taken). Both forks are taken with a single CAS when they share a
+ * word, otherwise with two CASes in word order, rolling back the first if the
+ * second fails. A hungry philosopher spins for a while and only then parks.
+ * @author David Lin
+ */
+public class CasForkTable implements ForkArbiter {
+
+  /** Number of failed attempts before a philosopher parks. */
+  private static final int SPIN_LIMIT = 100;
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private int numForks;
+  private AtomicLongArray forks;
+
+  /** Parked philosophers, denoted by index, null when not parked. */
+  private AtomicReferenceArray<Thread> parked;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public CasForkTable(TableListener listener, int numForks) {
+    this.listener = listener;
+    this.numForks = numForks;
+    // All bits clear = all forks available
+    forks = new AtomicLongArray((numForks + 63) / 64);
+    parked = new AtomicReferenceArray<Thread>(numForks);
+  }
+
+  /**
+   * Pick up left and right forks, spinning then parking until both are free.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    int spins = 0;
+    while (!tryAcquire(leftFork, rightFork)) {
+      if (spins < SPIN_LIMIT) {
+        spins++;
+        Thread.onSpinWait();
+        continue;
+      }
+      // Publish ourselves before the last attempt so a release can't be missed
+      parked.set(phil, Thread.currentThread());
+      if (tryAcquire(leftFork, rightFork)) {
+        parked.set(phil, null);
+        break;
+      }
+      LockSupport.park(this);
+      parked.set(phil, null);
+    }
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+  }
+
+  /**
+   * Put down left and right forks and unpark the neighbours that share them.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    listener.setForkAvailable(leftFork);
+    listener.setForkAvailable(rightFork);
+    release(leftFork);
+    release(rightFork);
+    // Fork i is shared by philosophers i and i + 1
+    wake(leftFork);
+    wake((leftFork + 1) % numForks);
+    wake(rightFork);
+    wake((rightFork + 1) % numForks);
+  }
+
+  /**
+   * Try to take both forks.
+   * @param leftFork Index of left fork
+   * @param rightFork Index of right fork
+   * @return true if both forks are now held
+   */
+  private boolean tryAcquire(int leftFork, int rightFork) {
+    int first = Math.min(leftFork, rightFork);
+    int second = Math.max(leftFork, rightFork);
+    int firstWord = first >>> 6;
+    int secondWord = second >>> 6;
+    long firstBit = 1L << first;
+    long secondBit = 1L << second;
+
+    if (firstWord == secondWord) {
+      return trySet(firstWord, firstBit | secondBit);
+    }
+
+    // Forks live in different words, take the lower one first
+    if (!trySet(firstWord, firstBit)) {
+      return false;
+    }
+    if (!trySet(secondWord, secondBit)) {
+      clear(firstWord, firstBit);
+      // A neighbour may have parked while we briefly held the first fork
+      wake(first);
+      wake((first + 1) % numForks);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Set bits if they are all clear, retrying when the CAS only lost to a
+   * change elsewhere in the word.
+   * @param index Word index
+   * @param bit Bit mask
+   * @return true if this call set the bits, false if one of them is taken
+   */
+  private boolean trySet(int index, long bit) {
+    while (true) {
+      long word = forks.get(index);
+      if ((word & bit) != 0) {
+        return false;
+      }
+      if (forks.compareAndSet(index, word, word | bit)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Clear a bit.
+   * @param index Word index
+   * @param bit Bit mask
+   */
+  private void clear(int index, long bit) {
+    while (true) {
+      long word = forks.get(index);
+      if (forks.compareAndSet(index, word, word & ~bit)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Return a fork to the table.
+   * @param fork Index of fork on table
+   */
+  private void release(int fork) {
+    clear(fork >>> 6, 1L << fork);
+  }
+
+  /**
+   * Unpark a philosopher if it is parked.
+   * @param phil Philosopher's index on table
+   */
+  private void wake(int phil) {
+    Thread waiter = parked.get(phil);
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+}
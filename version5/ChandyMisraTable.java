@@ -0,0 +1,217 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork arbiter implementing the Chandy-Misra protocol. Every fork always
+ * belongs to one of its two neighbours and is either clean or dirty, and the
+ * neighbour that does not hold it holds a request token for it instead. A hungry
+ * philosopher sends the token to the holder. The holder gives up the fork if it
+ * is dirty and the holder is not eating, cleaning it on the way. Otherwise the
+ * request waits until the holder has eaten, after which all its forks are dirty.
+ * <p>
+ * There is no table-wide lock: each fork is its own small lock that only its two
+ * neighbours ever take, which stands in for the message channel between them.
+ * Forks start with the lower numbered neighbour so the precedence graph is
+ * acyclic, which is what keeps the protocol free of deadlock and starvation.
+ * <p>
+ * Fork i is shared by philosophers i and i + 1, as set up by DiningPhilosophersV5.
+ * @author David Lin
+ */
+public class ChandyMisraTable implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private int numForks;
+  private ReentrantLock locks[];
+
+  /** Per-fork protocol state, guarded by that fork's lock. */
+  private int holder[];
+  private int token[];
+  private boolean dirty[];
+
+  /** Philosophers eating, only changed while holding both of their fork locks. */
+  private boolean eating[];
+
+  /** Hungry philosophers waiting for forks, null when not waiting. */
+  private AtomicReferenceArray<Thread> parked;
+
+  /**
+   * Set to 1 when a neighbour changed one of a philosopher's forks. Parking
+   * can't rely on the unpark permit alone, because taking a fork lock may
+   * park internally and swallow it.
+   */
+  private AtomicIntegerArray signalled;
+
+  /** Protocol statistics. */
+  private LongAdder requests;
+  private LongAdder transfers;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public ChandyMisraTable(TableListener listener, int numForks) {
+    this.listener = listener;
+    this.numForks = numForks;
+    locks = new ReentrantLock[numForks];
+    holder = new int[numForks];
+    token = new int[numForks];
+    dirty = new boolean[numForks];
+    eating = new boolean[numForks];
+    parked = new AtomicReferenceArray<Thread>(numForks);
+    signalled = new AtomicIntegerArray(numForks);
+    requests = new LongAdder();
+    transfers = new LongAdder();
+    for (int i = 0; i < numForks; i++) {
+      int next = (i + 1) % numForks;
+      locks[i] = new ReentrantLock();
+      // Lower numbered neighbour starts with a dirty fork, the other with the token
+      holder[i] = Math.min(i, next);
+      token[i] = Math.max(i, next);
+      dirty[i] = true;
+    }
+  }
+
+  /**
+   * Request any missing forks from their holders and wait until both arrive.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    ReentrantLock first = locks[Math.min(leftFork, rightFork)];
+    ReentrantLock second = locks[Math.max(leftFork, rightFork)];
+    parked.set(phil, Thread.currentThread());
+    while (true) {
+      signalled.set(phil, 0);
+      request(phil, leftFork);
+      request(phil, rightFork);
+      first.lock();
+      second.lock();
+      try {
+        if (holder[leftFork] == phil && holder[rightFork] == phil) {
+          eating[phil] = true;
+          break;
+        }
+      }
+      finally {
+        second.unlock();
+        first.unlock();
+      }
+      // A neighbour signals us when it hands over a fork or takes one of ours
+      while (signalled.get(phil) == 0) {
+        LockSupport.park(this);
+      }
+    }
+    parked.set(phil, null);
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+  }
+
+  /**
+   * Finish eating: both forks become dirty and any pending request is served.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    ReentrantLock first = locks[Math.min(leftFork, rightFork)];
+    ReentrantLock second = locks[Math.max(leftFork, rightFork)];
+    int leftTo = -1;
+    int rightTo = -1;
+    first.lock();
+    second.lock();
+    try {
+      int phil = holder[leftFork];
+      eating[phil] = false;
+      dirty[leftFork] = true;
+      dirty[rightFork] = true;
+      listener.setForkAvailable(leftFork);
+      listener.setForkAvailable(rightFork);
+      if (token[leftFork] == phil) {
+        leftTo = handOver(leftFork, phil);
+      }
+      if (token[rightFork] == phil) {
+        rightTo = handOver(rightFork, phil);
+      }
+    }
+    finally {
+      second.unlock();
+      first.unlock();
+    }
+    wake(leftTo);
+    wake(rightTo);
+  }
+
+  /**
+   * Send the request token for a fork to its holder if we have it, and let the
+   * holder answer. Must not be called while holding any fork lock.
+   * @param phil Hungry philosopher
+   * @param fork Index of fork on table
+   */
+  private void request(int phil, int fork) {
+    int takenFrom = -1;
+    locks[fork].lock();
+    try {
+      if (holder[fork] != phil && token[fork] == phil) {
+        int owner = holder[fork];
+        token[fork] = owner;
+        requests.increment();
+        // Holder gives up a dirty fork unless it is eating with it
+        if (dirty[fork] && !eating[owner]) {
+          handOver(fork, owner);
+          takenFrom = owner;
+        }
+      }
+    }
+    finally {
+      locks[fork].unlock();
+    }
+    // The holder may be hungry too and has to ask for the fork back
+    wake(takenFrom);
+  }
+
+  /**
+   * Clean a fork and pass it to the other neighbour. The giver keeps the token.
+   * Caller holds the fork's lock.
+   * @param fork Index of fork on table
+   * @param from Philosopher giving up the fork
+   * @return Philosopher receiving the fork
+   */
+  private int handOver(int fork, int from) {
+    int to = (from == fork) ? (fork + 1) % numForks : fork;
+    holder[fork] = to;
+    dirty[fork] = false;
+    transfers.increment();
+    return to;
+  }
+
+  /**
+   * Signal a philosopher and unpark it if it is waiting for forks.
+   * @param phil Philosopher's index on table, or -1 for nobody
+   */
+  private void wake(int phil) {
+    if (phil < 0) {
+      return;
+    }
+    signalled.set(phil, 1);
+    Thread waiter = parked.get(phil);
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  /**
+   * Print protocol message counts.
+   */
+  @Override
+  public void printStats() {
+    System.out.println("Fork requests: " + requests.sum() + ", fork transfers: "
+        + transfers.sum());
+  }
+}
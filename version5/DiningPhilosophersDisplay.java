@@ -8,32 +8,43 @@ import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 /**
  * This very simple class (and very limited)  implements a panel that displays a table, philosophers, plates, and chopsticks/forks that can
  * be used to animate a dining philosopher application. Essentially, you create the display using the constructor passing in
  * the number of philosophers. Then use the setPhilosopherState(), setForkTaken(), setForkAvailable() functions to update
- * the state of the display. You do not have to call repaint() on the display. 
+ * the state of the display. You do not have to call repaint() on the display. The display is a {@link TableListener}
+ * and a {@link TimingSource}, so it can be handed straight to the philosophers and fork arbiters.
+ * <p>
+ * The update functions only publish the new state and mark it changed; updates never wait on each other.
+ * A Swing timer clears the mark, copies the state into a snapshot owned by the event dispatch thread and
+ * repaints at most 60 times a second, however often the state changes. An update that lands during the
+ * copy leaves the mark set, so the next frame picks it up.
  * 
  * @author Henri Casanova
  */
 @SuppressWarnings("serial")
-public class DiningPhilosophersDisplay extends JPanel implements ActionListener {
+public class DiningPhilosophersDisplay extends JPanel implements ActionListener, TableListener, TimingSource {
 
 	// Constants defining philosopher states
 	/** "Thinking" state of a philosopher
 	 */
-	static public final int THINKING=0;
+	static public final int THINKING=TableListener.THINKING;
 	/** "Hungry" state of a philosopher
 	 */
-	static public final int HUNGRY=1;
+	static public final int HUNGRY=TableListener.HUNGRY;
 	/** "Eating" state of a philosopher
 	 */
-	static public final int EATING=2;
+	static public final int EATING=TableListener.EATING;
 
 	/**
 	 * Creates a new display for the Dining Philosophers problem
@@ -41,7 +52,25 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 	 * @param     n       The number of philosophers
 	 */
 	public DiningPhilosophersDisplay(int n) {
+		this(n, null);
+	}
+
+	/**
+	 * Creates a new display for the Dining Philosophers problem that reports fork events to a sink
+	 * 
+	 * @param     n       The number of philosophers
+	 * @param     sink    Where fork events go, null to print them to the console
+	 */
+	public DiningPhilosophersDisplay(int n, EventSink sink) {
 		super();
+		if (sink == null) {
+			try {
+				sink = EventSink.create("console");
+			} catch (IOException e) {
+				sink = EventSink.NONE;
+			}
+		}
+		this.sink = sink;
 		topPanel = new JPanel();
 		tablePanel = new TablePanel();
 
@@ -65,6 +94,7 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		maxThinkTime.setSelectedIndex(1);
 		minEatTime.setSelectedIndex(0);
 		maxEatTime.setSelectedIndex(1);
+		publishTiming();
 
 		minThinkTime.addActionListener(this);
 		maxThinkTime.addActionListener(this);
@@ -82,15 +112,32 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 
 		tablePanel.setPreferredSize(new Dimension(size, size+50));
 		num_phils = n;
-		forks = new int[num_phils];
-		phil_states = new int[num_phils];
+		forks = new AtomicIntegerArray(num_phils);
+		phil_states = new AtomicIntegerArray(num_phils);
+		paint_forks = new int[num_phils];
+		paint_states = new int[num_phils];
 		for (int i=0; i<num_phils; i++) {
 			// Forks are initially all on the table
-			forks[i] = -1;
+			forks.set(i, -1);
+			paint_forks[i] = -1;
 			// Philosophers are initially all thinking
-			phil_states[i] = DiningPhilosophersDisplay.THINKING;
+			phil_states.set(i, DiningPhilosophersDisplay.THINKING);
+			paint_states[i] = DiningPhilosophersDisplay.THINKING;
 		}
 
+		// Repaint at a fixed rate, and only if something changed
+		frame_timer = new Timer(1000 / frame_rate, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				if (changed) {
+					// Clear before copying, so an update made during the copy shows in the next frame
+					changed = false;
+					copy_state();
+					tablePanel.repaint();
+				}
+			}
+		});
+		frame_timer.start();
+
 		this.setLayout(new BorderLayout());
 		this.add(topPanel, BorderLayout.NORTH);
 		this.add(tablePanel, BorderLayout.SOUTH);
@@ -132,6 +179,17 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		return ((Integer)(maxEatTime.getSelectedItem())).intValue();
 	}
 
+	/**
+	 * Returns the think and eat times selected by the user. Unlike the getters above, this can be called
+	 * from any thread: it returns the immutable snapshot published the last time a selection changed, so
+	 * all four times always come from the same selection.
+	 *
+	 * @returns   the selected ranges in milliseconds
+	 */
+	public Timing getTiming() {
+		return timing;
+	}
+
 	/**
 	 * Places a philosopher in a given state. 
 	 *
@@ -148,8 +206,8 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		if ((phil < 0) || (phil > num_phils - 1)) {
 			throw new IllegalArgumentException("Invalid philosoper index");
 		}
-		phil_states[phil] = state;
-		this.repaint();
+		phil_states.set(phil, state);
+		changed = true;
 	}
 
 	/**
@@ -170,9 +228,9 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		if ((phil != fork) && (phil != (fork + 1) % num_phils)) {
 			throw new IllegalArgumentException("Philosopher "+phil+" cannot take fork "+fork+"!");
 		}
-		System.out.println("Philosopher"+phil+" takes fork "+fork);
-		forks[fork] = phil;
-		tablePanel.repaint();
+		sink.forkTaken(fork, phil);
+		forks.set(fork, phil);
+		changed = true;
 	}
 
 	/**
@@ -186,9 +244,16 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		if ((fork < 0) || (fork > num_phils - 1)) {
 			throw new IllegalArgumentException("Invalid fork index");
 		}
-		System.out.println("Philosopher "+forks[fork]+" relases fork "+fork);
-		forks[fork] = -1;
-		this.repaint();
+		int phil = forks.getAndSet(fork, -1);
+		changed = true;
+		sink.forkAvailable(fork, phil);
+	}
+
+	/**
+	 * Writes out pending fork events and closes the event sink
+	 */
+	public void closeEventSink() {
+		sink.close();
 	}
 
 	/////////////////////////
@@ -198,10 +263,20 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 	static private final int size = 600;
 	static private final int default_phil_radius=40;
 	static private final int default_plate_radius=30;
+	static private final int frame_rate=60;
+	static private final int min_seat_pixels=4;   // below this many pixels of ring per seat, draw the aggregated view
+
+	private int num_phils;                  // number of philosophers
+	private AtomicIntegerArray forks;       // array that stores while philosopher holds which fork
+	private AtomicIntegerArray phil_states; // states of the philosophers
+	private volatile boolean changed;       // set by updates, cleared when a frame is taken
+	private volatile Timing timing;         // think and eat times, replaced whenever a selection changes
+	private EventSink sink;                 // where fork events are reported
 
-	private int num_phils;     // number of philosophers
-	private int forks[];       // array that stores while philosopher holds which fork
-	private int phil_states[]; // states of the philosophers
+	// Snapshot of forks and phil_states taken for each frame, only used on the event dispatch thread
+	private int paint_forks[];
+	private int paint_states[];
+	private Timer frame_timer;
 
 	private JPanel topPanel;
 	private TablePanel tablePanel;
@@ -226,6 +301,21 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 		} else if (c == maxEatTime) {
 			updateMinComboBoxes(maxEatTime,minEatTime);
 		}
+		publishTiming();
+	}
+
+	// Take a snapshot of the selected times for the philosophers, on the event dispatch thread
+	private void publishTiming() {
+		timing = new Timing(getMinThinkTime() * 1000L, getMaxThinkTime() * 1000L,
+				getMinEatTime() * 1000L, getMaxEatTime() * 1000L);
+	}
+
+	// Private useful method
+	private void copy_state() {
+		for (int i=0; i<num_phils; i++) {
+			paint_forks[i] = forks.get(i);
+			paint_states[i] = phil_states.get(i);
+		}
 	}
 
 	// Private useful method
@@ -261,37 +351,71 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 	}
 
 	private class TablePanel extends JPanel {
+
+		// Geometry of the table, computed once for the number of philosophers
+		private int geometry_phils;          // number of philosophers the geometry is for, 0 if none yet
+		private int center_x, center_y;
+		private int phil_location_radius, table_radius, plate_location_radius;
+		private int phil_radius, plate_radius;
+		private int phil_x[], phil_y[];      // centers of the philosophers
+		private int plate_x[], plate_y[];    // centers of the plates
+		private int fork_lines[];            // for each fork, 3 lines of 4 coordinates: on the table, held by i, held by i+1
+
+		// Aggregated view, used once seats get too small to see
+		private boolean aggregated;
+		private int bins;                    // number of arcs the ring is split into
+		private int seat_bin[];              // arc of each philosopher
+		private int fork_bin[];              // arc of each fork
+		private int phil_pixels[], phil_pixel_bins[];   // pixels of the philosopher ring and their arcs
+		private int fork_pixels[], fork_pixel_bins[];   // pixels of the fork ring and their arcs
+		private int bin_seats[], bin_thinking[], bin_hungry[], bin_eating[];
+		private int bin_forks[], bin_taken[];
+		private int bin_color[];
+		private BufferedImage ring_image;
+		private int ring_raster[];
+
 		/**
 		 * The paintComponent method, which should not be overriden or called directly.
 		 */
 		public void paintComponent(Graphics win) {
-
-			int center_x = (DiningPhilosophersDisplay.size / 2);
-			int center_y = (DiningPhilosophersDisplay.size / 2);
-			int phil_location_radius =
-				(int)(((DiningPhilosophersDisplay.size / 2) - DiningPhilosophersDisplay.default_phil_radius)*.90);
-			int table_radius = (int)((phil_location_radius - default_phil_radius)*.90);
-			int plate_location_radius =(int)((table_radius - default_plate_radius)*.90);
-
-			int phil_radius =
-				java.lang.Math.min(default_plate_radius,(int)(2*java.lang.Math.PI*phil_location_radius/(2*num_phils)));
-			int plate_radius =
-				java.lang.Math.min(default_plate_radius,(int)(2*java.lang.Math.PI*plate_location_radius/(2*num_phils)));
+			if (geometry_phils != num_phils) {
+				compute_geometry();
+			}
 
 			// Draw the table
 			win.setColor(Color.gray);
 			draw_circle(win,Color.gray,center_x,center_y, table_radius);
 
+			if (aggregated) {
+				paint_aggregated(win);
+			} else {
+				paint_seats(win);
+			}
+
+			// draw the caption
+			win.setColor(Color.blue);
+			win.fillRect(30,size,30,20);
+			win.setColor(Color.red);
+			win.fillRect(180,size,30,20);
+			win.setColor(Color.green);
+			win.fillRect(330,size,30,20);
+
+
+			win.setColor(Color.black);
+			win.drawString("Thinking",70,size+15);
+			win.drawString("Hungry",220,size+15);
+			win.drawString("Eating",370,size+15);
+		}
+
+		// Draw every plate, philosopher and fork from the cached geometry
+		private void paint_seats(Graphics win) {
 			// Draw the plates and the philosophers
 			for (int i=0; i<num_phils;i++) {
 				// draw the plate
-				draw_circle(win,Color.white,
-						(int)(center_x+plate_location_radius*java.lang.Math.cos(i*2*java.lang.Math.PI/num_phils)),
-						(int)(center_y+plate_location_radius*java.lang.Math.sin(i*2*java.lang.Math.PI/num_phils)),
-						java.lang.Math.min(plate_radius,(int)(2*java.lang.Math.PI*plate_location_radius/(2*num_phils))));
+				draw_circle(win,Color.white,plate_x[i],plate_y[i],plate_radius);
 				// pick the right color for the philosopher
 				Color phil_color = Color.white; // white is the color of a philosopher in an invalid state
-				switch (phil_states[i]) {
+				switch (paint_states[i]) {
 				case DiningPhilosophersDisplay.THINKING:
 					phil_color = Color.blue;
 					break;
@@ -303,57 +427,186 @@ public class DiningPhilosophersDisplay extends JPanel implements ActionListener
 					break;
 				}
 				// draw the philosopher
-				draw_circle(win,phil_color,
-						(int)(center_x+phil_location_radius*java.lang.Math.cos(i*2*java.lang.Math.PI/num_phils)),
-						(int)(center_y+phil_location_radius*java.lang.Math.sin(i*2*java.lang.Math.PI/num_phils)),
-						java.lang.Math.min(phil_radius,(int)(2*java.lang.Math.PI*phil_location_radius/(2*num_phils))));
+				draw_circle(win,phil_color,phil_x[i],phil_y[i],phil_radius);
 				// draw the philosopher number if there aren't too many
 				win.setColor(Color.black);
 				if (num_phils < 50) {
-					win.drawString((new Integer(i)).toString(),
-							(int)(center_x+phil_location_radius*java.lang.Math.cos(i*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+phil_location_radius*java.lang.Math.sin(i*2*java.lang.Math.PI/num_phils)));
+					win.drawString((new Integer(i)).toString(),phil_x[i],phil_y[i]);
 				}
 			}
 			// Draw the chopstick
 			win.setColor(Color.black);
 			for (int i=0;i<num_phils;i++) {
-				if (forks[i] == -1) {
-					win.drawLine(
-							(int)(center_x+(plate_location_radius + plate_radius)*java.lang.Math.cos((i+.5)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius + plate_radius)*java.lang.Math.sin((i+.5)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_x+(plate_location_radius - plate_radius)*java.lang.Math.cos((i+.5)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius - plate_radius)*java.lang.Math.sin((i+.5)*2*java.lang.Math.PI/num_phils)));
-				} else if (forks[i] == i) {
-					win.drawLine(
-							(int)(center_x+(plate_location_radius + plate_radius)*java.lang.Math.cos(+0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+(i)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius + plate_radius)*java.lang.Math.sin(+0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+i*2*java.lang.Math.PI/num_phils)),
-							(int)(center_x+(plate_location_radius - plate_radius)*java.lang.Math.cos(+0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+i*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius - plate_radius)*java.lang.Math.sin(+0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+i*2*java.lang.Math.PI/num_phils)));
-				} else if (forks[i] == (i+1) % num_phils) {
-					win.drawLine(
-							(int)(center_x+(plate_location_radius + plate_radius)*java.lang.Math.cos(-0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+(i+1)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius + plate_radius)*java.lang.Math.sin(-0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+(i+1)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_x+(plate_location_radius - plate_radius)*java.lang.Math.cos(-0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+(i+1)*2*java.lang.Math.PI/num_phils)),
-							(int)(center_y+(plate_location_radius - plate_radius)*java.lang.Math.sin(-0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius)+(i+1)*2*java.lang.Math.PI/num_phils)));
+				int line;
+				if (paint_forks[i] == -1) {
+					line = 0;
+				} else if (paint_forks[i] == i) {
+					line = 1;
+				} else if (paint_forks[i] == (i+1) % num_phils) {
+					line = 2;
 				} else {
 					System.out.println("HERE");
+					continue;
 				}
+				int k = 12*i + 4*line;
+				win.drawLine(fork_lines[k],fork_lines[k+1],fork_lines[k+2],fork_lines[k+3]);
 			}
+		}
 
-			// draw the caption
-			win.setColor(Color.blue);
-			win.fillRect(30,size,30,20);
-			win.setColor(Color.red);
-			win.fillRect(180,size,30,20);
-			win.setColor(Color.green);
-			win.fillRect(330,size,30,20);
+		// Draw two rings straight into an image: the outer one colors each arc by the share of
+		// philosophers thinking (blue), hungry (red) and eating (green), the inner one darkens
+		// with the share of forks in use
+		private void paint_aggregated(Graphics win) {
+			java.util.Arrays.fill(bin_thinking, 0);
+			java.util.Arrays.fill(bin_hungry, 0);
+			java.util.Arrays.fill(bin_eating, 0);
+			java.util.Arrays.fill(bin_taken, 0);
+			for (int i=0; i<num_phils; i++) {
+				switch (paint_states[i]) {
+				case DiningPhilosophersDisplay.THINKING:
+					bin_thinking[seat_bin[i]]++;
+					break;
+				case DiningPhilosophersDisplay.HUNGRY:
+					bin_hungry[seat_bin[i]]++;
+					break;
+				case DiningPhilosophersDisplay.EATING:
+					bin_eating[seat_bin[i]]++;
+					break;
+				}
+				if (paint_forks[i] != -1) {
+					bin_taken[fork_bin[i]]++;
+				}
+			}
 
+			for (int b=0; b<bins; b++) {
+				int seats = java.lang.Math.max(1, bin_seats[b]);
+				bin_color[b] = 0xff000000 |
+						((255*bin_hungry[b]/seats) << 16) |
+						((255*bin_eating[b]/seats) << 8) |
+						(255*bin_thinking[b]/seats);
+			}
+			for (int p=0; p<phil_pixels.length; p++) {
+				ring_raster[phil_pixels[p]] = bin_color[phil_pixel_bins[p]];
+			}
 
-			win.setColor(Color.black);
-			win.drawString("Thinking",70,size+15);
-			win.drawString("Hungry",220,size+15);
-			win.drawString("Eating",370,size+15);
+			for (int b=0; b<bins; b++) {
+				int free = 255 - 255*bin_taken[b]/java.lang.Math.max(1, bin_forks[b]);
+				bin_color[b] = 0xff000000 | (free << 16) | (free << 8) | free;
+			}
+			for (int p=0; p<fork_pixels.length; p++) {
+				ring_raster[fork_pixels[p]] = bin_color[fork_pixel_bins[p]];
+			}
+
+			win.drawImage(ring_image, 0, 0, null);
+		}
+
+		// Compute where everything goes, so painting a frame does no trigonometry
+		private void compute_geometry() {
+			center_x = (DiningPhilosophersDisplay.size / 2);
+			center_y = (DiningPhilosophersDisplay.size / 2);
+			phil_location_radius =
+				(int)(((DiningPhilosophersDisplay.size / 2) - DiningPhilosophersDisplay.default_phil_radius)*.90);
+			table_radius = (int)((phil_location_radius - default_phil_radius)*.90);
+			plate_location_radius =(int)((table_radius - default_plate_radius)*.90);
+
+			phil_radius =
+				java.lang.Math.min(default_plate_radius,(int)(2*java.lang.Math.PI*phil_location_radius/(2*num_phils)));
+			plate_radius =
+				java.lang.Math.min(default_plate_radius,(int)(2*java.lang.Math.PI*plate_location_radius/(2*num_phils)));
+
+			// Switch to the aggregated view once a philosopher gets less than min_seat_pixels of the ring
+			aggregated = 2*java.lang.Math.PI*phil_location_radius/num_phils < min_seat_pixels;
+			if (aggregated) {
+				compute_rings();
+				geometry_phils = num_phils;
+				return;
+			}
+
+			phil_x = new int[num_phils];
+			phil_y = new int[num_phils];
+			plate_x = new int[num_phils];
+			plate_y = new int[num_phils];
+			fork_lines = new int[12*num_phils];
+			double tilt = 0.5*java.lang.Math.atan((float)plate_radius/(float)plate_location_radius);
+			for (int i=0; i<num_phils; i++) {
+				double angle = i*2*java.lang.Math.PI/num_phils;
+				double cos = java.lang.Math.cos(angle);
+				double sin = java.lang.Math.sin(angle);
+				phil_x[i] = (int)(center_x+phil_location_radius*cos);
+				phil_y[i] = (int)(center_y+phil_location_radius*sin);
+				plate_x[i] = (int)(center_x+plate_location_radius*cos);
+				plate_y[i] = (int)(center_y+plate_location_radius*sin);
+				fork_line(12*i, (i+.5)*2*java.lang.Math.PI/num_phils);
+				fork_line(12*i+4, tilt+i*2*java.lang.Math.PI/num_phils);
+				fork_line(12*i+8, -tilt+(i+1)*2*java.lang.Math.PI/num_phils);
+			}
+			geometry_phils = num_phils;
+		}
+
+		// Store a fork line across the plate ring at a given angle
+		private void fork_line(int k, double angle) {
+			double cos = java.lang.Math.cos(angle);
+			double sin = java.lang.Math.sin(angle);
+			fork_lines[k] = (int)(center_x+(plate_location_radius + plate_radius)*cos);
+			fork_lines[k+1] = (int)(center_y+(plate_location_radius + plate_radius)*sin);
+			fork_lines[k+2] = (int)(center_x+(plate_location_radius - plate_radius)*cos);
+			fork_lines[k+3] = (int)(center_y+(plate_location_radius - plate_radius)*sin);
+		}
+
+		// Split the rings into about one arc per pixel of circumference and find each pixel's arc
+		private void compute_rings() {
+			bins = java.lang.Math.min(num_phils, (int)(2*java.lang.Math.PI*phil_location_radius));
+			seat_bin = new int[num_phils];
+			fork_bin = new int[num_phils];
+			bin_seats = new int[bins];
+			bin_forks = new int[bins];
+			for (int i=0; i<num_phils; i++) {
+				seat_bin[i] = (int)((long)i*bins/num_phils);
+				fork_bin[i] = (int)(((2L*i+1)*bins/(2L*num_phils)) % bins);
+				bin_seats[seat_bin[i]]++;
+				bin_forks[fork_bin[i]]++;
+			}
+			bin_thinking = new int[bins];
+			bin_hungry = new int[bins];
+			bin_eating = new int[bins];
+			bin_taken = new int[bins];
+			bin_color = new int[bins];
+
+			ring_image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+			ring_raster = ((DataBufferInt)ring_image.getRaster().getDataBuffer()).getData();
+			int phil_ring[][] = ring_pixels(phil_location_radius - default_phil_radius/2,
+					phil_location_radius + default_phil_radius/2);
+			phil_pixels = phil_ring[0];
+			phil_pixel_bins = phil_ring[1];
+			int fork_ring[][] = ring_pixels(plate_location_radius - default_plate_radius/2,
+					plate_location_radius + default_plate_radius/2);
+			fork_pixels = fork_ring[0];
+			fork_pixel_bins = fork_ring[1];
+		}
+
+		// Return the raster offsets of the pixels between two radii, and the arc each falls in
+		private int[][] ring_pixels(int inner, int outer) {
+			int count = 0;
+			int pixels[] = new int[size*size];
+			int pixel_bins[] = new int[size*size];
+			for (int y=0; y<size; y++) {
+				for (int x=0; x<size; x++) {
+					int dx = x - center_x;
+					int dy = y - center_y;
+					int d2 = dx*dx + dy*dy;
+					if (d2 < inner*inner || d2 > outer*outer) {
+						continue;
+					}
+					double angle = java.lang.Math.atan2(dy, dx);
+					if (angle < 0) {
+						angle += 2*java.lang.Math.PI;
+					}
+					pixels[count] = y*size + x;
+					pixel_bins[count] = java.lang.Math.min(bins - 1, (int)(angle*bins/(2*java.lang.Math.PI)));
+					count++;
+				}
+			}
+			return new int[][] {java.util.Arrays.copyOf(pixels, count), java.util.Arrays.copyOf(pixel_bins, count)};
 		}
 
 		// Private useful method
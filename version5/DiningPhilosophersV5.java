@@ -1,30 +1,36 @@
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Vector;
+import java.io.IOException;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
 /**
- * Responsible for creating the DiningPhilosophersDisplay.
+ * Responsible for creating the DiningPhilosophersDisplay. The table itself runs
+ * in a DiningTable that reports to the display; see HeadlessRunner for running
+ * it without Swing.
  * @author David Lin
  */
 @SuppressWarnings("serial")
 public class DiningPhilosophersV5 extends JPanel implements ActionListener, Runnable {
 
   /* Display items. */
-  private static int numPhils;
-  private static int numSeconds;
   private static JFrame frame;
   private static DiningPhilosophersDisplay display;
   private static JButton runButton;
   private static JButton quitButton;
   private static JButton pauseButton;
 
-  /* Thread handler. */
-  private Vector<Philosopher> threadTable;
+  /* Settings from the command line. */
+  private static TableOptions options;
+
+  /* Where the display reports fork events. */
+  private static EventSink eventSink;
+
+  /* Philosophers and their fork arbiter. */
+  private DiningTable table;
 
   /* Determine if start button should start or resume. */
   private boolean programStarted = false;
@@ -37,40 +43,34 @@ public class DiningPhilosophersV5 extends JPanel implements ActionListener, Runn
     runButton = new JButton("Run");
     pauseButton = new JButton("Pause");
     quitButton = new JButton("Quit");
-    display = new DiningPhilosophersDisplay(numPhils);
+    display = new DiningPhilosophersDisplay(options.getNumPhils(), eventSink);
     runButton.addActionListener(this);
     pauseButton.addActionListener(this);
     quitButton.addActionListener(this);
     pauseButton.setEnabled(false);
-    threadTable = new Vector<Philosopher>(0);
+    table = new DiningTable(options, display, display);
   }
 
   /**
    * Program start.
-   * @param args Takes two positive integers as argument.
+   * @param args Takes two positive integers as argument, followed by optional
+   *     name=value settings.
    */
   public static void main(String[] args) {
-    // Validate input, there should only be two arguments.
-    if (args.length != 2) {
-      System.out.println("Usage: java DiningPhilosophersV1 <# of philosophers (2 or more)> "
-          + "<# of seconds to run simulation (1 or more)>");
-      System.exit(0);
-    }
-
     // Validate input
     try {
-      numPhils = Integer.parseInt(args[0]);
-      numSeconds = Integer.parseInt(args[1]);
-      if (numPhils < 2 || numSeconds < 1) {
-        System.out.println("Usage: java DiningPhilosophersV1 <# of philosophers (2 or more)> "
-            + "<# of seconds to run simulation> (1 or more)");
-        System.exit(0);
-      }
+      options = new TableOptions(args);
     }
-    catch (NumberFormatException ex) {
-      System.out.println("Usage: java DiningPhilosophersV1 <# of philosophers (2 or more)> "
-          + "<# of seconds to run simulation> (1 or more)");
-      System.exit(0);
+    catch (IllegalArgumentException ex) {
+      System.out.println(ex.getMessage());
+      printUsage();
+    }
+    try {
+      eventSink = EventSink.create(options.getLog());
+    }
+    catch (IOException | IllegalArgumentException ex) {
+      System.out.println("Cannot log to " + options.getLog() + ": " + ex.getMessage());
+      printUsage();
     }
 
     // Create and show GUI.
@@ -115,90 +115,49 @@ public class DiningPhilosophersV5 extends JPanel implements ActionListener, Runn
       }
       // Otherwise resume from paused state
       else {
-        for (int i = 0; i < numPhils; i++) {
-          threadTable.get(i).setPaused(false);
-          threadTable.get(i).interrupt();
-        }
+        table.resume();
       }
     }
     else if (e.getSource() == pauseButton) {
       pauseButton.setEnabled(false);
       runButton.setEnabled(true);
-      for (int i = 0; i < numPhils; i++) {
-        threadTable.get(i).setPaused(true);
-        threadTable.get(i).interrupt();
-      }
+      table.pause();
     }
     // Exit DiningPhilosophers on exit button click
     else if (e.getSource() == quitButton) {
       if (programStarted == true) {
-        // Interrupt threads
-        for (int i = 0; i < numPhils; i++) {
-          threadTable.get(i).setPaused(true);
-          threadTable.get(i).interrupt();
-        }
-        printHungryTime();
+        // Stop philosophers
+        table.stop();
+        display.closeEventSink();
+        table.printHungryTime();
       }
       System.exit(0);
     }
   }
 
   /**
-   * Worker thread that spawns off philosopher threads.
+   * Worker thread that runs the table for the given time.
    */
   @Override
   public void run() {
-    // Create a monitor for handling the forks
-    ForkMonitor monitor = new ForkMonitor(display, numPhils);
-    // Create a thread for each philosopher
-    for (int i = 0; i < numPhils; i++) {
-      // Set up parameters
-      int phil = i;
-      int leftFork = i;
-      int rightFork = (phil + numPhils - 1) % numPhils;
-      threadTable.add(new Philosopher(phil, leftFork, rightFork, display, monitor));
-      threadTable.get(i).start();
-    }
-
-    // Run simulation for specified amount of time
-    try {
-      Thread.sleep(numSeconds * 1000);
-    }
-    catch (InterruptedException e) {
-      // do nothing
+    if (options.isSimulated()) {
+      table.simulate();
+      System.exit(0);
     }
 
-    // Interrupt threads
-    for (int i = 0; i < numPhils; i++) {
-      threadTable.get(i).setPaused(true);
-      threadTable.get(i).interrupt();
-    }
+    // Run philosophers for specified amount of time, then stop them
+    table.run();
+    display.closeEventSink();
 
-    printHungryTime();
+    table.printHungryTime();
     System.exit(0);
   }
 
   /**
-   * Print hungry time info.
+   * Print usage and exit.
    */
-  private void printHungryTime() {
-    long totalTime = 0;
-    long minTime = 9999999;
-    long maxTime = 0;
-
-    for (int i = 0; i < numPhils; i++) {
-      totalTime += threadTable.get(i).getHungryTime();
-      if (threadTable.get(i).getHungryTime() < minTime) {
-        minTime = threadTable.get(i).getHungryTime();
-      }
-      if (threadTable.get(i).getHungryTime() > maxTime) {
-        maxTime = threadTable.get(i).getHungryTime();
-      }
-      System.out.println("Philosopher #" + i + " hungry time: "
-          + (threadTable.get(i).getHungryTime() / 1000.0) + "sec.");
-    }
-
-    System.out.println("Average hungry time: " + (totalTime / numPhils / 1000.0) + "sec.");
-    System.out.println("Spread of hungry time: " + ((maxTime - minTime) / 1000.0) + "sec.");
+  private static void printUsage() {
+    System.out.println("Usage: java DiningPhilosophersV5 " + TableOptions.USAGE);
+    System.exit(0);
   }
 }
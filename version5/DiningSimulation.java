@@ -0,0 +1,390 @@
+/**
+ * Discrete-event simulation of the dining philosophers. Instead of threads
+ * sleeping in real time, think and eat periods are events in a priority queue
+ * and a virtual clock jumps from one event to the next, so hours of dining are
+ * simulated in milliseconds.
+ * <p>
+ * The fork policies are those of the ForkMonitor versions: version1 to version3
+ * pick up the left fork and then the right fork (and can deadlock), version4
+ * only lets the head of a FIFO queue eat, and version5 lets anybody whose forks
+ * are free jump ahead. Seat i uses forks i and i - 1.
+ * <p>
+ * Per-seat state lives in an off-heap SeatStore and pending events in a heap of
+ * primitive arrays, so a run allocates nothing per event and a table of millions
+ * of seats costs a few dozen bytes a seat.
+ * @author David Lin
+ */
+public class DiningSimulation {
+
+  /** Event types. */
+  private static final int GET_HUNGRY = 0;
+  private static final int DONE_EATING = 1;
+
+  /** Marks a fork on the table or nobody waiting for it. */
+  private static final int NONE = SeatStore.NONE;
+
+  /** Simulation parameters, times in milliseconds. */
+  private int numPhils;
+  private int version;
+  private long minThinkTime;
+  private long maxThinkTime;
+  private long minEatTime;
+  private long maxEatTime;
+  private Workload workload;
+
+  /** Simulation state. */
+  private long clock;
+  private long nextSeq;
+  private EventHeap events;
+  private SeatStore seats;
+  private IntRingQueue queue;
+
+  /** Results. */
+  private LatencyHistogram hungryHistogram;
+  private long meals;
+  private long deadlockTime = NONE;
+
+  /**
+   * Set up a simulation with every philosopher thinking.
+   * @param numPhils Number of philosophers
+   * @param version ForkMonitor version whose policy to simulate, 1 to 5
+   * @param timing Think and eat time ranges
+   * @param workload Think and eat times, each seat draws from a seed of its own
+   */
+  public DiningSimulation(int numPhils, int version, Timing timing, Workload workload) {
+    if (version < 1 || version > 5) {
+      throw new IllegalArgumentException("Invalid ForkMonitor version " + version);
+    }
+    this.numPhils = numPhils;
+    this.version = version;
+    this.minThinkTime = timing.getMinThinkTime();
+    this.maxThinkTime = timing.getMaxThinkTime();
+    this.minEatTime = timing.getMinEatTime();
+    this.maxEatTime = timing.getMaxEatTime();
+    this.workload = workload;
+
+    // Every philosopher always has exactly one event pending
+    events = new EventHeap(numPhils);
+    seats = new SeatStore(numPhils);
+    hungryHistogram = new LatencyHistogram();
+    if (version == 4) {
+      queue = new IntRingQueue(numPhils);
+    }
+    for (int i = 0; i < numPhils; i++) {
+      seats.setSeed(i, workload.newSeed());
+      schedule(i, GET_HUNGRY, nextThinkTime(i));
+    }
+  }
+
+  /**
+   * Run the simulation until the virtual clock reaches the given time.
+   * @param duration Simulated time in milliseconds
+   */
+  public void run(long duration) {
+    while (!events.isEmpty() && events.peekTime() <= duration) {
+      clock = events.peekTime();
+      int phil = events.peekPhil();
+      int type = events.peekType();
+      events.poll();
+      if (type == GET_HUNGRY) {
+        getHungry(phil);
+      }
+      else {
+        doneEating(phil);
+      }
+    }
+    if (events.isEmpty() && deadlockTime == NONE) {
+      // Nobody will ever put a fork down again
+      deadlockTime = clock;
+    }
+    clock = duration;
+    // Philosophers still hungry at the end count up to now, like interrupted threads
+    for (int i = 0; i < numPhils; i++) {
+      if (seats.getState(i) == TableListener.HUNGRY) {
+        seats.accrueHungry(i, clock);
+      }
+    }
+  }
+
+  /**
+   * A philosopher stops thinking and goes for its forks.
+   * @param phil Philosopher's index on table
+   */
+  private void getHungry(int phil) {
+    seats.startHungry(phil, clock);
+    if (version <= 3) {
+      takeOrWait(phil, seats.leftFork(phil));
+    }
+    else if (version == 4) {
+      queue.add(phil);
+      grantQueueHead();
+    }
+    else {
+      seats.setArrival(phil, nextSeq++);
+      if (seats.bothFree(phil)) {
+        startEating(phil);
+      }
+    }
+  }
+
+  /**
+   * A philosopher finishes eating, puts its forks down and starts thinking.
+   * @param phil Philosopher's index on table
+   */
+  private void doneEating(int phil) {
+    int leftFork = seats.leftFork(phil);
+    int rightFork = seats.rightFork(phil);
+    seats.setForkOwner(leftFork, NONE);
+    seats.setForkOwner(rightFork, NONE);
+    seats.setState(phil, TableListener.THINKING);
+    schedule(phil, GET_HUNGRY, nextThinkTime(phil));
+
+    if (version <= 3) {
+      giveToWaiter(leftFork);
+      giveToWaiter(rightFork);
+    }
+    else if (version == 4) {
+      grantQueueHead();
+    }
+    else {
+      // Fork i is shared by philosophers i and i + 1, longest waiter first
+      int first = (phil + 1) % numPhils;
+      int second = rightFork;
+      if (isHungry(second)
+          && (!isHungry(first) || seats.getArrival(second) < seats.getArrival(first))) {
+        first = rightFork;
+        second = (phil + 1) % numPhils;
+      }
+      if (isHungry(first) && seats.bothFree(first)) {
+        startEating(first);
+      }
+      if (isHungry(second) && seats.bothFree(second)) {
+        startEating(second);
+      }
+    }
+  }
+
+  /**
+   * Version1 to version3: take a single fork or wait for it.
+   * @param phil Philosopher's index on table
+   * @param fork Index of fork on table
+   */
+  private void takeOrWait(int phil, int fork) {
+    if (seats.getForkOwner(fork) != NONE) {
+      seats.setForkWaiter(fork, phil);
+      return;
+    }
+    seats.setForkOwner(fork, phil);
+    if (fork == seats.leftFork(phil)) {
+      takeOrWait(phil, seats.rightFork(phil));
+    }
+    else {
+      startEating(phil);
+    }
+  }
+
+  /**
+   * Version1 to version3: hand a released fork to the neighbour waiting for it.
+   * @param fork Index of fork on table
+   */
+  private void giveToWaiter(int fork) {
+    int phil = seats.getForkWaiter(fork);
+    if (phil != NONE && seats.getForkOwner(fork) == NONE) {
+      seats.setForkWaiter(fork, NONE);
+      takeOrWait(phil, fork);
+    }
+  }
+
+  /**
+   * Version4: let philosophers at the head of the queue eat while they can.
+   */
+  private void grantQueueHead() {
+    while (!queue.isEmpty() && seats.bothFree(queue.peek())) {
+      startEating(queue.poll());
+    }
+  }
+
+  /**
+   * Give a philosopher its forks and schedule the end of its meal.
+   * @param phil Philosopher's index on table
+   */
+  private void startEating(int phil) {
+    seats.setForkOwner(seats.leftFork(phil), phil);
+    seats.setForkOwner(seats.rightFork(phil), phil);
+    seats.setState(phil, TableListener.EATING);
+    hungryHistogram.record((clock - seats.getHungrySince(phil)) * 1000000L);
+    seats.accrueHungry(phil, clock);
+    meals++;
+    schedule(phil, DONE_EATING, nextEatTime(phil));
+  }
+
+  /**
+   * Draw a philosopher's next think time from its own seed.
+   * @param phil Philosopher's index on table
+   * @return Time in milliseconds
+   */
+  private long nextThinkTime(int phil) {
+    return workload.thinkTime(seats.getSeed(phil), minThinkTime, maxThinkTime);
+  }
+
+  /**
+   * Draw a philosopher's next eat time from its own seed, and move the seed on
+   * to the next meal.
+   * @param phil Philosopher's index on table
+   * @return Time in milliseconds
+   */
+  private long nextEatTime(int phil) {
+    long seed = seats.getSeed(phil);
+    seats.setSeed(phil, workload.nextSeed(seed));
+    return workload.eatTime(seed, minEatTime, maxEatTime);
+  }
+
+  private boolean isHungry(int phil) {
+    return seats.getState(phil) == TableListener.HUNGRY;
+  }
+
+  /**
+   * Add an event after the given delay.
+   * @param phil Philosopher's index on table
+   * @param type GET_HUNGRY or DONE_EATING
+   * @param delay Milliseconds from now
+   */
+  private void schedule(int phil, int type, long delay) {
+    events.add(clock + delay, nextSeq++, phil, type);
+  }
+
+  /**
+   * Return a philosopher's hungry time.
+   * @param phil Philosopher's index on table
+   * @return hungry time in milliseconds
+   */
+  public long getHungryTime(int phil) {
+    return seats.getHungryTime(phil);
+  }
+
+  /**
+   * Return every completed hungry interval of the table.
+   * @return Histogram of hungry time in nanoseconds
+   */
+  public LatencyHistogram getHungryHistogram() {
+    return hungryHistogram;
+  }
+
+  /**
+   * Print hungry time info in the same format as DiningPhilosophersV5.
+   */
+  public void printHungryTime() {
+    long totalTime = 0;
+    long minTime = Long.MAX_VALUE;
+    long maxTime = 0;
+
+    for (int i = 0; i < numPhils; i++) {
+      long hungryTime = seats.getHungryTime(i);
+      totalTime += hungryTime;
+      minTime = Math.min(minTime, hungryTime);
+      maxTime = Math.max(maxTime, hungryTime);
+      System.out.println("Philosopher #" + i + " hungry time: " + (hungryTime / 1000.0)
+          + "sec.");
+    }
+
+    System.out.println("Average hungry time: " + (totalTime / numPhils / 1000.0) + "sec.");
+    System.out.println("Spread of hungry time: " + ((maxTime - minTime) / 1000.0) + "sec.");
+    hungryHistogram.printPercentiles(System.out, "Hungry time");
+    System.out.println("Simulated " + (clock / 1000.0) + "sec. of version" + version
+        + " policy, meals: " + meals);
+    if (deadlockTime != NONE) {
+      System.out.println("Deadlocked at " + (deadlockTime / 1000.0) + "sec.");
+    }
+  }
+
+  /**
+   * Binary min-heap of timed events kept in parallel primitive arrays, ordered
+   * by time and then by the order they were scheduled in so runs with the same
+   * seed are identical.
+   */
+  private static class EventHeap {
+    private long times[];
+    private long seqs[];
+    /** Philosopher index shifted left by one, event type in the low bit. */
+    private int events[];
+    private int size;
+
+    EventHeap(int capacity) {
+      times = new long[capacity];
+      seqs = new long[capacity];
+      events = new int[capacity];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    long peekTime() {
+      return times[0];
+    }
+
+    int peekPhil() {
+      return events[0] >>> 1;
+    }
+
+    int peekType() {
+      return events[0] & 1;
+    }
+
+    void add(long time, long seq, int phil, int type) {
+      int i = size++;
+      // Sift up
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!before(time, seq, parent)) {
+          break;
+        }
+        move(parent, i);
+        i = parent;
+      }
+      times[i] = time;
+      seqs[i] = seq;
+      events[i] = (phil << 1) | type;
+    }
+
+    void poll() {
+      size--;
+      long time = times[size];
+      long seq = seqs[size];
+      int event = events[size];
+      int i = 0;
+      // Sift the last entry down from the root
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && before(times[child + 1], seqs[child + 1], child)) {
+          child++;
+        }
+        if (!before(times[child], seqs[child], time, seq)) {
+          break;
+        }
+        move(child, i);
+        i = child;
+      }
+      times[i] = time;
+      seqs[i] = seq;
+      events[i] = event;
+    }
+
+    private boolean before(long time, long seq, int slot) {
+      return before(time, seq, times[slot], seqs[slot]);
+    }
+
+    private static boolean before(long time, long seq, long otherTime, long otherSeq) {
+      return time < otherTime || (time == otherTime && seq < otherSeq);
+    }
+
+    private void move(int from, int to) {
+      times[to] = times[from];
+      seqs[to] = seqs[from];
+      events[to] = events[from];
+    }
+  }
+}
@@ -0,0 +1,294 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The philosophers, their fork arbiter and everything that measures them, with
+ * no GUI. Whatever is watching the table gets state changes through a
+ * TableListener, and think and eat times come from a TimingSource, so the same
+ * table runs behind the Swing display and in a headless benchmark.
+ * @author David Lin
+ */
+public class DiningTable {
+
+  private TableOptions options;
+  private TableListener listener;
+  private TimingSource timing;
+
+  /* Thread handler. */
+  private Vector<Philosopher> threadTable;
+
+  /* Fork arbiter shared by the philosophers. */
+  private ForkArbiter monitor;
+
+  /* Pause barrier shared by the philosophers. */
+  private PauseGate gate;
+
+  /* Live counters published over JMX. */
+  private TableMetrics metrics;
+
+  /* Prometheus endpoint, null when not served. */
+  private MetricsServer server;
+
+  /**
+   * Set up a table, nobody is seated until start().
+   * @param options Settings of the run
+   * @param listener Told about state changes and forks changing hands
+   * @param timing Think and eat time ranges
+   */
+  public DiningTable(TableOptions options, TableListener listener, TimingSource timing) {
+    this.options = options;
+    this.listener = listener;
+    this.timing = timing;
+    threadTable = new Vector<Philosopher>(0);
+    gate = new PauseGate();
+  }
+
+  /**
+   * Create the fork arbiter and metrics and start every philosopher.
+   */
+  public void start() {
+    int numPhils = options.getNumPhils();
+    // Create a monitor for handling the forks
+    monitor = createArbiter();
+    metrics = new TableMetrics(options.getEngine(), monitor, threadTable);
+    metrics.register();
+    if (options.getMetricsPort() >= 0) {
+      try {
+        server = new MetricsServer(options.getMetricsPort(), metrics, monitor, threadTable);
+        server.start();
+        System.out.println("Metrics at http://localhost:" + server.getPort() + "/metrics");
+      }
+      catch (IOException ex) {
+        System.out.println("Cannot start metrics server: " + ex.getMessage());
+      }
+    }
+    ThreadFactory factory = null;
+    ScheduledExecutorService executor = null;
+    if (options.getRuntime().equals("event")) {
+      // Philosophers are state machines on a pool sized to the machine
+      executor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(),
+          createPlatformThreadFactory());
+    }
+    else {
+      factory = createThreadFactory();
+    }
+    // Create a thread for each philosopher
+    Workload workload = options.getWorkload();
+    for (int i = 0; i < numPhils; i++) {
+      // Set up parameters
+      int phil = i;
+      int leftFork = i;
+      int rightFork = (phil + numPhils - 1) % numPhils;
+      if (executor != null) {
+        threadTable.add(new EventPhilosopher(phil, leftFork, rightFork, listener, timing,
+            (HandoffForkMonitor) monitor, executor, gate, workload.newStream(), metrics));
+      }
+      else {
+        threadTable.add(new Philosopher(phil, leftFork, rightFork, listener, timing, monitor,
+            gate, workload.newStream(), metrics));
+      }
+      threadTable.get(i).start(factory);
+    }
+  }
+
+  /**
+   * Start the table, let it run for the time given on the command line and
+   * stop every philosopher.
+   */
+  public void run() {
+    start();
+    try {
+      Thread.sleep(options.getNumSeconds() * 1000L);
+    }
+    catch (InterruptedException e) {
+      // do nothing
+    }
+    stop();
+  }
+
+  /**
+   * Stop every philosopher for the report. Once the table is still, the
+   * philosophers still waiting for forks count as hungry up to now, like the
+   * simulation does. One that only just reached its free forks may still take
+   * them; closing an interval is guarded by the philosopher, so it is recorded
+   * once either way.
+   */
+  public void stop() {
+    gate.pause();
+    gate.awaitStill();
+    long now = System.nanoTime();
+    for (int i = 0; i < threadTable.size(); i++) {
+      threadTable.get(i).closeHungry(now);
+    }
+  }
+
+  /**
+   * Stop every philosopher where it is.
+   */
+  public void pause() {
+    gate.pause();
+  }
+
+  /**
+   * Let paused philosophers carry on.
+   */
+  public void resume() {
+    gate.resume();
+  }
+
+  /**
+   * Stop the metrics server, whose dispatcher thread would otherwise keep the
+   * JVM alive when a run fails. Philosopher threads and the event runtime pool
+   * are daemons and need no stopping.
+   */
+  public void shutdown() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  /**
+   * Simulate the run with a virtual clock instead of threads and print hungry
+   * time info.
+   */
+  public void simulate() {
+    Workload workload = options.getWorkload();
+    DiningSimulation simulation = new DiningSimulation(options.getNumPhils(),
+        options.getSimVersion(), timing.getTiming(), workload);
+    long start = System.currentTimeMillis();
+    simulation.run(options.getNumSeconds() * 1000L);
+    long stop = System.currentTimeMillis();
+    simulation.printHungryTime();
+    System.out.println(workload);
+    exportHistogram(simulation.getHungryHistogram());
+    System.out.println("Simulation took " + ((stop - start) / 1000.0) + "sec.");
+  }
+
+  /**
+   * Print hungry time info.
+   */
+  public void printHungryTime() {
+    if (metrics == null) {
+      // Never started
+      return;
+    }
+    int numPhils = options.getNumPhils();
+    long totalTime = 0;
+    long minTime = 9999999;
+    long maxTime = 0;
+
+    for (int i = 0; i < numPhils; i++) {
+      totalTime += threadTable.get(i).getHungryTime();
+      if (threadTable.get(i).getHungryTime() < minTime) {
+        minTime = threadTable.get(i).getHungryTime();
+      }
+      if (threadTable.get(i).getHungryTime() > maxTime) {
+        maxTime = threadTable.get(i).getHungryTime();
+      }
+      System.out.println("Philosopher #" + i + " hungry time: "
+          + (threadTable.get(i).getHungryTime() / 1000.0) + "sec.");
+    }
+
+    System.out.println("Average hungry time: " + (totalTime / numPhils / 1000.0) + "sec.");
+    System.out.println("Spread of hungry time: " + ((maxTime - minTime) / 1000.0) + "sec.");
+    System.out.println("Meals: " + metrics.getMeals() + ", meals per second: "
+        + metrics.getMealsPerSecond());
+    LatencyHistogram table = metrics.tableHistogram();
+    table.printPercentiles(System.out, "Hungry time");
+    monitor.printStats();
+    gate.printStats();
+    System.out.println(options.getWorkload());
+    exportHistogram(table);
+  }
+
+  /**
+   * Create the fork arbitration engine selected on the command line.
+   * @return Fork arbiter for the table
+   */
+  private ForkArbiter createArbiter() {
+    String engine = options.getEngine();
+    int numPhils = options.getNumPhils();
+    if (engine.equals("monitor")) {
+      return new ForkMonitor(listener, numPhils);
+    }
+    else if (engine.equals("striped")) {
+      return new StripedForkMonitor(listener, numPhils);
+    }
+    else if (engine.equals("cas")) {
+      return new CasForkTable(listener, numPhils);
+    }
+    else if (engine.equals("targeted")) {
+      return new TargetedForkMonitor(listener, numPhils);
+    }
+    else if (engine.equals("handoff")) {
+      return new HandoffForkMonitor(listener, numPhils, false);
+    }
+    else if (engine.equals("handoff-fifo")) {
+      return new HandoffForkMonitor(listener, numPhils, true);
+    }
+    else if (engine.equals("bypass")) {
+      return new BoundedBypassForkMonitor(listener, numPhils, options.getBypassLimit());
+    }
+    else if (engine.equals("chandy-misra")) {
+      return new ChandyMisraTable(listener, numPhils);
+    }
+    else if (engine.equals("ordered")) {
+      return new OrderedForkTable(listener, numPhils);
+    }
+    else if (engine.equals("waiter")) {
+      return new WaiterForkTable(listener, numPhils);
+    }
+    throw new IllegalArgumentException("Unknown engine: " + engine);
+  }
+
+  /**
+   * Create the factory for philosopher threads selected on the command line.
+   * @return Thread factory for philosophers
+   */
+  private ThreadFactory createThreadFactory() {
+    if (options.getRuntime().equals("virtual")) {
+      ThreadFactory factory = VirtualThreads.factory();
+      if (factory != null) {
+        return factory;
+      }
+      System.out.println("Virtual threads are not available, using platform threads");
+    }
+    return createPlatformThreadFactory();
+  }
+
+  /**
+   * Create a factory for daemon platform threads, like virtual threads they
+   * don't keep the JVM alive once the run is over.
+   * @return Thread factory for philosophers or the event runtime pool
+   */
+  private static ThreadFactory createPlatformThreadFactory() {
+    return new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * Write a hungry time histogram to the file given on the command line.
+   * @param histogram Table-wide histogram
+   */
+  private void exportHistogram(LatencyHistogram histogram) {
+    if (options.getHistogramFile() == null) {
+      return;
+    }
+    try (PrintStream out = new PrintStream(options.getHistogramFile())) {
+      histogram.export(out);
+    }
+    catch (FileNotFoundException ex) {
+      System.out.println("Cannot write histogram: " + ex.getMessage());
+    }
+  }
+}
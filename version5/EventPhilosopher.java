@@ -0,0 +1,190 @@
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Philosopher that runs as a state machine instead of a thread of its own.
+ * Thinking and eating are timers on a shared scheduled executor, and hunger ends
+ * with a callback from the fork monitor, so a handful of executor threads can
+ * drive any number of philosophers. Each step, and the task that resumes it
+ * after a pause, is a Runnable made once up front, so moving between states
+ * allocates nothing beyond the executor's own tasks. While the table is paused,
+ * the next step's resume task is handed to the pause gate instead of running;
+ * only the gate's list of held steps allocates, once per pause.
+ * @author David Lin
+ */
+public class EventPhilosopher extends Philosopher {
+
+  /** Data items. */
+  private HandoffForkMonitor monitor;
+  private ScheduledExecutorService executor;
+
+  /** States of the philosopher, counted as running by the pause gate. */
+  private Runnable thinkStep = new Runnable() {
+    public void run() {
+      gate.enter();
+      try {
+        think();
+      }
+      finally {
+        gate.exit();
+      }
+    }
+  };
+  private Runnable hungryStep = new Runnable() {
+    public void run() {
+      gate.enter();
+      try {
+        hungry();
+      }
+      finally {
+        gate.exit();
+      }
+    }
+  };
+  private Runnable grantedStep = new Runnable() {
+    public void run() {
+      endHungry();
+      metrics.ate();
+      executor.execute(eatStep);
+    }
+  };
+  private Runnable eatStep = new Runnable() {
+    public void run() {
+      gate.enter();
+      try {
+        eat();
+      }
+      finally {
+        gate.exit();
+      }
+    }
+  };
+  private Runnable putdownStep = new Runnable() {
+    public void run() {
+      gate.enter();
+      try {
+        putdown();
+      }
+      finally {
+        gate.exit();
+      }
+    }
+  };
+
+  /** Steps to run again once the table resumes, handed to the pause gate. */
+  private Runnable resumeThink = resumeLater(thinkStep);
+  private Runnable resumeHungry = resumeLater(hungryStep);
+  private Runnable resumeEat = resumeLater(eatStep);
+  private Runnable resumePutdown = resumeLater(putdownStep);
+
+  /**
+   * Initialize philosopher's data items.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   * @param listener Told about state changes and forks changing hands
+   * @param timing Think and eat time ranges
+   * @param monitor Fork monitor that can grant forks by callback
+   * @param executor Executor running every philosopher's steps
+   * @param gate Pause gate shared by all philosophers
+   * @param times Philosopher's own stream of think and eat times
+   * @param metrics Live counters of the table
+   */
+  public EventPhilosopher(int phil, int leftFork, int rightFork,
+      TableListener listener, TimingSource timing, HandoffForkMonitor monitor,
+      ScheduledExecutorService executor, PauseGate gate, Workload.Stream times,
+      TableMetrics metrics) {
+    super(phil, leftFork, rightFork, listener, timing, monitor, gate, times, metrics);
+    this.monitor = monitor;
+    this.executor = executor;
+  }
+
+  /**
+   * Start thinking on the executor.
+   */
+  @Override
+  public void start() {
+    executor.execute(thinkStep);
+  }
+
+  /**
+   * Start thinking on the executor, the philosopher needs no thread.
+   * @param factory Ignored
+   */
+  @Override
+  public void start(ThreadFactory factory) {
+    start();
+  }
+
+  /**
+   * Think, then get hungry once the think time is up.
+   */
+  private void think() {
+    if (holdIfPaused(resumeThink)) {
+      return;
+    }
+    changeState(TableListener.THINKING);
+    executor.schedule(hungryStep, getThinkTime(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Ask for forks, eating starts from the monitor's callback.
+   */
+  private void hungry() {
+    if (holdIfPaused(resumeHungry)) {
+      return;
+    }
+    beginHungry();
+    changeState(TableListener.HUNGRY);
+    metrics.hungry();
+    monitor.pickupForks(phil, leftFork, rightFork, grantedStep);
+  }
+
+  /**
+   * Eat, then put the forks down once the eat time is up.
+   */
+  private void eat() {
+    if (holdIfPaused(resumeEat)) {
+      return;
+    }
+    changeState(TableListener.EATING);
+    executor.schedule(putdownStep, getEatTime(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Put forks down and go back to thinking.
+   */
+  private void putdown() {
+    if (holdIfPaused(resumePutdown)) {
+      return;
+    }
+    monitor.putdownForks(leftFork, rightFork);
+    think();
+  }
+
+  /**
+   * Hold back a step while the program is paused.
+   * @param resume Task that runs the step once the program resumes
+   * @return true if the step was held back and must not run now
+   */
+  private boolean holdIfPaused(Runnable resume) {
+    if (!gate.isPaused()) {
+      return false;
+    }
+    return gate.hold(resume);
+  }
+
+  /**
+   * Make the task that puts a held step back on the executor.
+   * @param step Step to run
+   * @return Task to hand to the pause gate
+   */
+  private Runnable resumeLater(final Runnable step) {
+    return new Runnable() {
+      public void run() {
+        executor.execute(step);
+      }
+    };
+  }
+}
@@ -0,0 +1,77 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Destination for the fork events the display or an EventSinkListener
+ * reports. Sinks are called while fork arbiters hold their locks, so they must
+ * return quickly; all but NONE hand events to an AsyncEventSink that writes
+ * them on a background thread. Like the println log they replace, they keep
+ * every event unless created with the drop: prefix.
+ * @author David Lin
+ */
+public interface EventSink {
+
+  /** Sink that drops every event. */
+  EventSink NONE = new EventSink() {
+    public void forkTaken(int fork, int phil) {
+    }
+
+    public void forkAvailable(int fork, int phil) {
+    }
+  };
+
+  /**
+   * A philosopher took a fork.
+   * @param fork Index of fork on table
+   * @param phil Philosopher's index on table
+   */
+  void forkTaken(int fork, int phil);
+
+  /**
+   * A philosopher put a fork back on the table.
+   * @param fork Index of fork on table
+   * @param phil Philosopher's index on table
+   */
+  void forkAvailable(int fork, int phil);
+
+  /**
+   * Write out pending events and release the sink's resources.
+   */
+  default void close() {
+  }
+
+  /**
+   * Create a sink from a command line setting.
+   * @param spec none, console, file:[name] for text or binary:[name] for fixed size
+   *     records; prefixed with drop: to drop events rather than wait when the
+   *     writer falls behind, with a marker in the output counting them
+   * @return New sink
+   * @throws IOException if the file can't be created
+   * @throws IllegalArgumentException if the setting is unknown
+   */
+  static EventSink create(String spec) throws IOException {
+    if (spec.equals("none")) {
+      return NONE;
+    }
+    boolean lossy = spec.startsWith("drop:");
+    if (lossy) {
+      spec = spec.substring(5);
+    }
+    if (spec.equals("console")) {
+      // Buffered, flushed once per batch rather than once per line
+      PrintStream out = new PrintStream(new BufferedOutputStream(
+          new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+      return new AsyncEventSink(new AsyncEventSink.TextWriter(out, false), lossy);
+    }
+    if (spec.startsWith("file:")) {
+      return new AsyncEventSink(AsyncEventSink.TextWriter.toFile(spec.substring(5)), lossy);
+    }
+    if (spec.startsWith("binary:")) {
+      return new AsyncEventSink(new AsyncEventSink.BinaryWriter(spec.substring(7)), lossy);
+    }
+    throw new IllegalArgumentException("Unknown event sink " + spec);
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Table listener for runs without the display. Reports fork events to an event
+ * sink the same way the display does and ignores philosopher states.
+ * @author David Lin
+ */
+public class EventSinkListener implements TableListener {
+
+  private EventSink sink;
+
+  /** Philosopher holding each fork, -1 if on the table. Each fork's updates
+   * are ordered by the fork arbiter, which hands it from one holder to the next. */
+  private int holders[];
+
+  /**
+   * Create a listener for a table.
+   * @param numForks Number of forks on table
+   * @param sink Where fork events go
+   */
+  public EventSinkListener(int numForks, EventSink sink) {
+    this.sink = sink;
+    holders = new int[numForks];
+    for (int i = 0; i < numForks; i++) {
+      holders[i] = -1;
+    }
+  }
+
+  @Override
+  public void setPhilosopherState(int phil, int state) {
+  }
+
+  @Override
+  public void setForkTaken(int fork, int phil) {
+    sink.forkTaken(fork, phil);
+    holders[fork] = phil;
+  }
+
+  @Override
+  public void setForkAvailable(int fork) {
+    sink.forkAvailable(fork, holders[fork]);
+    holders[fork] = -1;
+  }
+}
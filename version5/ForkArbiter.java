@@ -0,0 +1,71 @@
+/**
+ * Arbitrates access to forks in dining philosophers problem. Philosophers only
+ * call pickupForks() and putdownForks(), so any engine implementing this can be
+ * swapped in for the original ForkMonitor.
+ * @author David Lin
+ */
+public interface ForkArbiter {
+
+  /**
+   * Pick up left and right forks, blocking until both are held.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  void pickupForks(int phil, int leftFork, int rightFork);
+
+  /**
+   * Put down left and right forks.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  void putdownForks(int leftFork, int rightFork);
+
+  /**
+   * Print engine statistics at the end of a run. Engines with nothing to
+   * report keep this default.
+   */
+  default void printStats() {
+  }
+
+  /**
+   * Return how many philosophers are queued for forks right now, for live
+   * monitoring. Read without locking, so it may be slightly stale.
+   * @return Queue length, 0 for engines without a queue
+   */
+  default int getQueueLength() {
+    return 0;
+  }
+
+  /**
+   * Return how many times philosophers have waited for forks so far.
+   * @return Wait count, 0 for engines that don't count
+   */
+  default long getWaitCount() {
+    return 0;
+  }
+
+  /**
+   * Return how many waiting philosophers were woken up for nothing so far.
+   * @return Wasted wakeups, 0 for engines that don't count
+   */
+  default long getWastedWakeups() {
+    return 0;
+  }
+
+  /**
+   * Return the total time the arbiter's lock has been held so far.
+   * @return Lock hold time in nanoseconds, 0 for engines that don't measure it
+   */
+  default long getLockHoldTime() {
+    return 0;
+  }
+
+  /**
+   * Return how many times the arbiter's lock has been held so far.
+   * @return Lock holds, 0 for engines that don't measure them
+   */
+  default long getLockHolds() {
+    return 0;
+  }
+}
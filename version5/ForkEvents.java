@@ -0,0 +1,173 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for forks and philosophers. Each emit method
+ * checks whether its event type is enabled before creating anything, so with
+ * no recording running a call costs a flag check and allocates nothing.
+ * Record with -XX:StartFlightRecording or jcmd JFR.start and open the .jfr file
+ * in JDK Mission Control under "Dining Philosophers".
+ * @author David Lin
+ */
+public final class ForkEvents {
+
+  private static final EventType PICKUP_REQUESTED =
+      EventType.getEventType(ForkPickupRequested.class);
+  private static final EventType GRANTED = EventType.getEventType(ForkGranted.class);
+  private static final EventType RELEASED = EventType.getEventType(ForkReleased.class);
+  private static final EventType MONITOR_WAIT = EventType.getEventType(MonitorWait.class);
+  private static final EventType STATE_CHANGE =
+      EventType.getEventType(PhilosopherStateChange.class);
+
+  private ForkEvents() {
+  }
+
+  /**
+   * A philosopher asked for its forks.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   * @param queuePosition Position in the queue, 0 at the head
+   */
+  public static void pickupRequested(int phil, int leftFork, int rightFork, int queuePosition) {
+    if (PICKUP_REQUESTED.isEnabled()) {
+      ForkPickupRequested event = new ForkPickupRequested();
+      event.phil = phil;
+      event.leftFork = leftFork;
+      event.rightFork = rightFork;
+      event.queuePosition = queuePosition;
+      event.commit();
+    }
+  }
+
+  /**
+   * A philosopher got both forks.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   * @param waitDuration Nanoseconds since it asked for them
+   */
+  public static void granted(int phil, int leftFork, int rightFork, long waitDuration) {
+    if (GRANTED.isEnabled()) {
+      ForkGranted event = new ForkGranted();
+      event.phil = phil;
+      event.leftFork = leftFork;
+      event.rightFork = rightFork;
+      event.waitDuration = waitDuration;
+      event.commit();
+    }
+  }
+
+  /**
+   * Forks were put down.
+   * @param leftFork Index of left fork on table
+   * @param rightFork Index of right fork on table
+   */
+  public static void released(int leftFork, int rightFork) {
+    if (RELEASED.isEnabled()) {
+      ForkReleased event = new ForkReleased();
+      event.leftFork = leftFork;
+      event.rightFork = rightFork;
+      event.commit();
+    }
+  }
+
+  /**
+   * A philosopher came back from waiting in the fork monitor.
+   * @param phil Philosopher's index on table
+   * @param waitDuration Nanoseconds spent waiting
+   * @param wasted true if it was woken without getting its forks
+   */
+  public static void monitorWait(int phil, long waitDuration, boolean wasted) {
+    if (MONITOR_WAIT.isEnabled()) {
+      MonitorWait event = new MonitorWait();
+      event.phil = phil;
+      event.waitDuration = waitDuration;
+      event.wasted = wasted;
+      event.commit();
+    }
+  }
+
+  /**
+   * A philosopher started thinking, got hungry or started eating.
+   * @param phil Philosopher's index on table
+   * @param state One of TableListener THINKING, HUNGRY or EATING
+   */
+  public static void stateChange(int phil, int state) {
+    if (STATE_CHANGE.isEnabled()) {
+      PhilosopherStateChange event = new PhilosopherStateChange();
+      event.phil = phil;
+      event.state = (state == TableListener.THINKING) ? "thinking"
+          : (state == TableListener.HUNGRY) ? "hungry" : "eating";
+      event.commit();
+    }
+  }
+
+  @Name("diningphilosophers.ForkPickupRequested")
+  @Label("Fork Pickup Requested")
+  @Category("Dining Philosophers")
+  static class ForkPickupRequested extends Event {
+    @Label("Philosopher")
+    int phil;
+    @Label("Left Fork")
+    int leftFork;
+    @Label("Right Fork")
+    int rightFork;
+    @Label("Queue Position")
+    int queuePosition;
+  }
+
+  @Name("diningphilosophers.ForkGranted")
+  @Label("Fork Granted")
+  @Category("Dining Philosophers")
+  static class ForkGranted extends Event {
+    @Label("Philosopher")
+    int phil;
+    @Label("Left Fork")
+    int leftFork;
+    @Label("Right Fork")
+    int rightFork;
+    @Label("Wait Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long waitDuration;
+  }
+
+  @Name("diningphilosophers.ForkReleased")
+  @Label("Fork Released")
+  @Category("Dining Philosophers")
+  static class ForkReleased extends Event {
+    @Label("Left Fork")
+    int leftFork;
+    @Label("Right Fork")
+    int rightFork;
+  }
+
+  @Name("diningphilosophers.MonitorWait")
+  @Label("Monitor Wait")
+  @Category("Dining Philosophers")
+  static class MonitorWait extends Event {
+    @Label("Philosopher")
+    int phil;
+    @Label("Wait Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long waitDuration;
+    @Label("Wasted")
+    @Description("Woken up without getting the forks")
+    boolean wasted;
+  }
+
+  @Name("diningphilosophers.PhilosopherStateChange")
+  @Label("Philosopher State Change")
+  @Category("Dining Philosophers")
+  static class PhilosopherStateChange extends Event {
+    @Label("Philosopher")
+    int phil;
+    @Label("State")
+    String state;
+  }
+}
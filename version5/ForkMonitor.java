@@ -1,31 +1,67 @@
-import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Monitor that synchronizes access to forks in dining philosophers problem.
+ * Hungry philosophers whose two forks are free are kept in a ready set that is
+ * only updated for the seats next to a fork that changed, so granting forks
+ * never has to scan the queue. Each seat waits on a condition of its own and
+ * is only signalled once it has been granted its forks, so a putdown wakes
+ * nobody else. Seat i uses forks i and i - 1.
  * @author David Lin
  */
-public class ForkMonitor {
+public class ForkMonitor implements ForkArbiter {
 
   /** Monitor data items. */
-  private DiningPhilosophersDisplay display;
+  private TableListener listener;
   private int forks[];
+  private ReentrantLock lock;
+  private Condition grantedConditions[];
   
   /** Philosopher queue, denoted by index. */
-  private Vector<Integer> queue;
+  private IntRingQueue queue;
+
+  /** Hungry philosophers, those with both forks free, and those handed forks. */
+  private boolean hungry[];
+  private boolean ready[];
+  private boolean granted[];
+
+  /** Wait and wakeup counters, readable without the monitor. */
+  private LongAdder waits;
+  private LongAdder wakeups;
+  private LongAdder wastedWakeups;
+
+  /** Time spent holding the monitor, not counting time waiting for a grant. */
+  private LongAdder lockHoldTime;
+  private LongAdder lockHolds;
 
   /**
    * Initialize monitor data items.
-   * @param display GUI accessor
+   * @param listener Told about state changes and forks changing hands
    * @param numForks Number of forks on table
    */
-  public ForkMonitor(DiningPhilosophersDisplay display, int numForks) {
-    this.display = display;
+  public ForkMonitor(TableListener listener, int numForks) {
+    this.listener = listener;
     forks = new int[numForks];
     for (int i = 0; i < forks.length; i++) {
       // 1 = available, 0 = taken
       forks[i] = 1;
     }
-    queue = new Vector<Integer>(0);
+    lock = new ReentrantLock();
+    grantedConditions = new Condition[numForks];
+    for (int i = 0; i < numForks; i++) {
+      grantedConditions[i] = lock.newCondition();
+    }
+    queue = new IntRingQueue(numForks);
+    hungry = new boolean[numForks];
+    ready = new boolean[numForks];
+    granted = new boolean[numForks];
+    waits = new LongAdder();
+    wakeups = new LongAdder();
+    wastedWakeups = new LongAdder();
+    lockHoldTime = new LongAdder();
+    lockHolds = new LongAdder();
   }
 
   /**
@@ -34,43 +70,56 @@ public class ForkMonitor {
    * @param leftFork Index of philosopher's left fork on table
    * @param rightFork Index of philosopher's right fork on table
    */
-  public synchronized void pickupForks(int phil, int leftFork, int rightFork) {
-    queue.add(phil);
-    // Only philosophers at head of queue can try to pick up forks to eat
-    while (phil != queue.get(0) || forks[leftFork] == 0 || forks[rightFork] == 0) {
-      //printQueue();
-      // If philosopher not at head can eat, move to head of queue
-      if (forks[leftFork] == 1 && forks[rightFork] == 1) {
-        for (int i = 0; i < queue.size(); i++) {
-          if (queue.get(i) == phil) {
-            queue.remove(i);
-            break;
-          }
-        }
-        queue.add(0, phil);
-        //System.out.println("PHILOSOPHER #" + phil + " JUMPING TO HEAD OF QUEUE");
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    lock.lock();
+    long start = System.nanoTime();
+    long held = start;
+    try {
+      queue.add(phil);
+      ForkEvents.pickupRequested(phil, leftFork, rightFork, queue.size() - 1);
+      hungry[phil] = true;
+      updateReady(phil);
+      // If philosopher can eat right away, it jumps to the head of the queue
+      if (ready[phil]) {
+        grant(phil);
       }
-      else {
+      // Otherwise wait until a putdown grants it the forks
+      while (!granted[phil]) {
+        //printQueue();
+        waits.increment();
+        long waitStart = System.nanoTime();
+        lockHoldTime.add(waitStart - held);
         try {
-          wait();
+          grantedConditions[phil].await();
         }
         catch (InterruptedException e) {
+          held = System.nanoTime();
+          if (granted[phil]) {
+            break;
+          }
+          // Leave the queue so the philosophers behind can move up
+          queue.remove(phil);
+          hungry[phil] = false;
+          ready[phil] = false;
           return;
         }
+        held = System.nanoTime();
+        // Woken up for nothing if the forks went to someone else
+        wakeups.increment();
+        if (!granted[phil]) {
+          wastedWakeups.increment();
+        }
+        ForkEvents.monitorWait(phil, held - waitStart, !granted[phil]);
       }
+      granted[phil] = false;
+      ForkEvents.granted(phil, leftFork, rightFork, System.nanoTime() - start);
     }
-    
-    // Philosopher can eat so remove from queue
-    if (phil == queue.get(0)) {
-      queue.remove(0);
-      // New philosopher arrives at head of queue, give it opportunity to eat
-      notifyAll();
+    finally {
+      lockHoldTime.add(System.nanoTime() - held);
+      lockHolds.increment();
+      lock.unlock();
     }
-    
-    forks[leftFork] = 0;
-    forks[rightFork] = 0;
-    display.setForkTaken(leftFork, phil);
-    display.setForkTaken(rightFork, phil);
   }
 
   /**
@@ -79,23 +128,116 @@ public class ForkMonitor {
    * @param leftFork Index of philosopher's left fork on table
    * @param rightFork Index of philosopher's right fork on table
    */
-  public synchronized void putdownForks(int leftFork, int rightFork) {
-    forks[leftFork] = 1;
-    forks[rightFork] = 1;
-    display.setForkAvailable(leftFork);
-    display.setForkAvailable(rightFork);
-    // Finished eating so give philosopher at head of queue opportunity to eat
-    notifyAll();
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      long held = System.nanoTime();
+      forks[leftFork] = 1;
+      forks[rightFork] = 1;
+      listener.setForkAvailable(leftFork);
+      listener.setForkAvailable(rightFork);
+      ForkEvents.released(leftFork, rightFork);
+      // Fork i is shared by philosophers i and i + 1, only they can become ready
+      updateReady((leftFork + 1) % forks.length);
+      updateReady(rightFork);
+      grantReady(rightFork, (leftFork + 1) % forks.length);
+      lockHoldTime.add(System.nanoTime() - held);
+      lockHolds.increment();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Grant forks to every ready philosopher in a range of seats. Outside the
+   * monitor the ready set is empty, so after a putdown it only holds seats
+   * next to the released forks and the range around them covers it. The range
+   * is a few seats, so checking each costs the same at any table size.
+   * @param from First seat
+   * @param to Last seat, before from if the range wraps around the table
+   */
+  private void grantReady(int from, int to) {
+    for (int phil = from; ; phil = (phil + 1) % forks.length) {
+      if (ready[phil]) {
+        grant(phil);
+      }
+      if (phil == to) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Take both of a philosopher's forks on its behalf, mark it granted and
+   * signal it in case it is waiting.
+   * @param phil Philosopher's index on table
+   */
+  private void grant(int phil) {
+    int leftFork = phil;
+    int rightFork = (phil + forks.length - 1) % forks.length;
+    queue.remove(phil);
+    hungry[phil] = false;
+    granted[phil] = true;
+    forks[leftFork] = 0;
+    forks[rightFork] = 0;
+    // Only the seats next to the taken forks can have stopped being ready
+    ready[phil] = false;
+    updateReady((leftFork + 1) % forks.length);
+    updateReady(rightFork);
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+    grantedConditions[phil].signal();
+  }
+
+  /**
+   * Recompute whether a philosopher is hungry with both forks free.
+   * @param phil Philosopher's index on table
+   */
+  private void updateReady(int phil) {
+    int leftFork = phil;
+    int rightFork = (phil + forks.length - 1) % forks.length;
+    ready[phil] = hungry[phil] && forks[leftFork] == 1 && forks[rightFork] == 1;
+  }
+
+  /**
+   * Print wakeup counts.
+   */
+  @Override
+  public void printStats() {
+    System.out.println("Wakeups: " + wakeups.sum() + ", wasted: " + wastedWakeups.sum());
+  }
+
+  @Override
+  public int getQueueLength() {
+    return queue.size();
+  }
+
+  @Override
+  public long getWaitCount() {
+    return waits.sum();
+  }
+
+  @Override
+  public long getWastedWakeups() {
+    return wastedWakeups.sum();
+  }
+
+  @Override
+  public long getLockHoldTime() {
+    return lockHoldTime.sum();
+  }
+
+  @Override
+  public long getLockHolds() {
+    return lockHolds.sum();
   }
 
   /**
    * Print the queue of philosophers.
    */
   public void printQueue() {
-    System.out.print("Queue: ");
-    for (int i = 0; i < queue.size(); i++) {
-      System.out.print(queue.get(i) + " ");
-    }
-    System.out.println();
+    System.out.println("Queue: " + queue);
   }
 }
@@ -0,0 +1,228 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork monitor that hands forks directly to a waiting philosopher on putdown.
+ * When a released fork lets a hungry philosopher eat, both of its forks are
+ * assigned to it before it is woken, so it returns from pickupForks() without
+ * re-checking or racing anybody for the lock.
+ * <p>
+ * In FIFO mode only the head of the queue is granted forks, like version4.
+ * Otherwise any hungry neighbour whose forks are both free is granted, like
+ * the version5 jump-ahead policy.
+ * <p>
+ * Besides the blocking pickupForks(), forks can be requested with a callback
+ * that runs once they have been handed over, which lets philosophers that are
+ * not threads of their own wait for forks.
+ * <p>
+ * Seat i is assumed to use forks i and i - 1, as set up by DiningPhilosophersV5.
+ * @author David Lin
+ */
+public class HandoffForkMonitor implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private int numPhils;
+  private int forks[];
+  private ReentrantLock lock;
+  private Condition philConditions[];
+
+  /** Hungry philosophers and the order they got hungry in. */
+  private boolean hungry[];
+  private long arrival[];
+  private long nextArrival;
+
+  /** Philosophers that have been handed their forks but not yet returned. */
+  private boolean granted[];
+
+  /** Callbacks of philosophers waiting without a thread, null otherwise. */
+  private Runnable callbacks[];
+
+  /** Philosopher queue in FIFO mode, denoted by index. */
+  private boolean fifo;
+  private IntRingQueue queue;
+
+  /** Requests that had to wait, readable without the lock. */
+  private LongAdder waits;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   * @param fifo true for version4 FIFO order, false for version5 jump-ahead
+   */
+  public HandoffForkMonitor(TableListener listener, int numForks, boolean fifo) {
+    this.listener = listener;
+    this.numPhils = numForks;
+    this.fifo = fifo;
+    forks = new int[numForks];
+    lock = new ReentrantLock();
+    philConditions = new Condition[numForks];
+    hungry = new boolean[numForks];
+    arrival = new long[numForks];
+    granted = new boolean[numForks];
+    callbacks = new Runnable[numForks];
+    queue = new IntRingQueue(numForks);
+    waits = new LongAdder();
+    for (int i = 0; i < forks.length; i++) {
+      // 1 = available, 0 = taken
+      forks[i] = 1;
+      philConditions[i] = lock.newCondition();
+    }
+  }
+
+  /**
+   * Pick up left and right forks, waiting to be handed them if they are taken.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      request(phil, leftFork, rightFork);
+      while (!granted[phil]) {
+        philConditions[phil].awaitUninterruptibly();
+      }
+      granted[phil] = false;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Ask for left and right forks without waiting. The callback runs as soon as
+   * both forks have been handed over, either right away or from the
+   * putdownForks() call that frees them. It runs while the monitor lock is
+   * held, so it should only hand work off and must not block.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   * @param onGranted Called once the philosopher holds both forks
+   */
+  public void pickupForks(int phil, int leftFork, int rightFork, Runnable onGranted) {
+    lock.lock();
+    try {
+      callbacks[phil] = onGranted;
+      request(phil, leftFork, rightFork);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Grant forks right away if the policy allows, otherwise start waiting.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  private void request(int phil, int leftFork, int rightFork) {
+    boolean canEat = forks[leftFork] == 1 && forks[rightFork] == 1;
+    if (fifo) {
+      // Nobody cuts in front of philosophers already waiting
+      canEat = canEat && queue.isEmpty();
+    }
+    if (canEat) {
+      grant(phil);
+    }
+    else {
+      waits.increment();
+      hungry[phil] = true;
+      arrival[phil] = nextArrival++;
+      if (fifo) {
+        queue.add(phil);
+      }
+    }
+  }
+
+  /**
+   * Put down left and right forks and hand them on to whoever can now eat.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      forks[leftFork] = 1;
+      forks[rightFork] = 1;
+      listener.setForkAvailable(leftFork);
+      listener.setForkAvailable(rightFork);
+      if (fifo) {
+        // Grant the head of the queue for as long as its forks are free
+        while (!queue.isEmpty() && canEat(queue.peek())) {
+          grant(queue.poll());
+        }
+      }
+      else {
+        // Fork i is shared by philosophers i and i + 1, longest waiter first
+        int first = (leftFork + 1) % numPhils;
+        int second = rightFork;
+        if (hungry[second] && (!hungry[first] || arrival[second] < arrival[first])) {
+          first = rightFork;
+          second = (leftFork + 1) % numPhils;
+        }
+        if (hungry[first] && canEat(first)) {
+          grant(first);
+        }
+        if (hungry[second] && canEat(second)) {
+          grant(second);
+        }
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Check whether both of a philosopher's forks are on the table.
+   * @param phil Philosopher's index on table
+   * @return true if both forks are available
+   */
+  private boolean canEat(int phil) {
+    return forks[phil] == 1 && forks[(phil + numPhils - 1) % numPhils] == 1;
+  }
+
+  /**
+   * Assign both forks to a philosopher and wake it up, or run its callback.
+   * @param phil Philosopher's index on table
+   */
+  private void grant(int phil) {
+    int leftFork = phil;
+    int rightFork = (phil + numPhils - 1) % numPhils;
+    forks[leftFork] = 0;
+    forks[rightFork] = 0;
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+    hungry[phil] = false;
+    Runnable callback = callbacks[phil];
+    if (callback != null) {
+      callbacks[phil] = null;
+      callback.run();
+    }
+    else {
+      granted[phil] = true;
+      philConditions[phil].signal();
+    }
+  }
+
+  @Override
+  public int getQueueLength() {
+    return queue.size();
+  }
+
+  /**
+   * Return how many requests could not be granted right away. Forks are handed
+   * over before a philosopher is woken, so there are no wasted wakeups.
+   * @return Wait count
+   */
+  @Override
+  public long getWaitCount() {
+    return waits.sum();
+  }
+}
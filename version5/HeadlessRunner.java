@@ -0,0 +1,145 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a table without Swing, for build agents and benchmark harnesses. Takes
+ * the same arguments as DiningPhilosophersV5, plus fixed think and eat times in
+ * place of the display's combo boxes and an optional file for the results.
+ * Fork events are only logged when asked for with log=, and nothing here loads
+ * AWT, so the numbers measure the engine alone.
+ * @author David Lin
+ */
+public class HeadlessRunner {
+
+  /**
+   * Program start.
+   * @param args Takes two positive integers as argument, followed by optional
+   *     name=value settings.
+   */
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      printUsage();
+    }
+
+    // Pull out the headless settings, pass the rest on to the table
+    long think[] = {Timing.DEFAULT.getMinThinkTime(), Timing.DEFAULT.getMaxThinkTime()};
+    long eat[] = {Timing.DEFAULT.getMinEatTime(), Timing.DEFAULT.getMaxEatTime()};
+    String resultFile = null;
+    List<String> tableArgs = new ArrayList<String>();
+    tableArgs.add(args[0]);
+    tableArgs.add(args[1]);
+    // No fork event log unless one is given
+    tableArgs.add("log=none");
+    try {
+      for (int i = 2; i < args.length; i++) {
+        if (args[i].startsWith("think=")) {
+          think = parseRange(args[i].substring(6));
+        }
+        else if (args[i].startsWith("eat=")) {
+          eat = parseRange(args[i].substring(4));
+        }
+        else if (args[i].startsWith("out=")) {
+          resultFile = args[i].substring(4);
+        }
+        else {
+          tableArgs.add(args[i]);
+        }
+      }
+    }
+    catch (IllegalArgumentException ex) {
+      System.out.println(ex.getMessage());
+      printUsage();
+    }
+
+    TableOptions options = null;
+    Timing timing = null;
+    EventSink eventSink = null;
+    try {
+      options = new TableOptions(tableArgs.toArray(new String[0]));
+      timing = new Timing(think[0], think[1], eat[0], eat[1]);
+    }
+    catch (IllegalArgumentException ex) {
+      System.out.println(ex.getMessage());
+      printUsage();
+    }
+    try {
+      eventSink = EventSink.create(options.getLog());
+    }
+    catch (IOException | IllegalArgumentException ex) {
+      System.out.println("Cannot log to " + options.getLog() + ": " + ex.getMessage());
+      printUsage();
+    }
+    if (resultFile != null) {
+      // Every report prints to System.out; a console event log writes to the
+      // file descriptor directly and still goes to the terminal
+      try {
+        System.setOut(new PrintStream(resultFile));
+      }
+      catch (FileNotFoundException ex) {
+        System.out.println("Cannot write results: " + ex.getMessage());
+        printUsage();
+      }
+    }
+
+    TableListener listener = TableListener.NONE;
+    if (eventSink != EventSink.NONE) {
+      listener = new EventSinkListener(options.getNumPhils(), eventSink);
+    }
+    DiningTable table = new DiningTable(options, listener, timing);
+    // No engine runs in a simulation, it follows a ForkMonitor version's policy
+    String arbiter = options.isSimulated() ? "Policy: version" + options.getSimVersion()
+        : "Engine: " + options.getEngine();
+    System.out.println(arbiter + ", runtime: " + options.getRuntime()
+        + ", philosophers: " + options.getNumPhils() + ", seconds: " + options.getNumSeconds());
+    System.out.println(timing);
+    try {
+      if (options.isSimulated()) {
+        table.simulate();
+      }
+      else {
+        table.run();
+        eventSink.close();
+        table.printHungryTime();
+      }
+    }
+    finally {
+      table.shutdown();
+    }
+    System.out.flush();
+    System.exit(0);
+  }
+
+  /**
+   * Parse a range of milliseconds.
+   * @param range [min]-[max], or a single number for a fixed time
+   * @return Minimum and maximum
+   * @throws IllegalArgumentException if the range isn't numbers
+   */
+  private static long[] parseRange(String range) {
+    int split = range.indexOf('-');
+    try {
+      if (split < 0) {
+        long time = Long.parseLong(range);
+        return new long[] {time, time};
+      }
+      return new long[] {Long.parseLong(range.substring(0, split)),
+          Long.parseLong(range.substring(split + 1))};
+    }
+    catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Not a range of milliseconds: " + range);
+    }
+  }
+
+  /**
+   * Print usage and exit.
+   */
+  private static void printUsage() {
+    System.out.println("Usage: java HeadlessRunner " + TableOptions.USAGE
+        + " [think=<min>-<max> milliseconds] [eat=<min>-<max> milliseconds] "
+        + "[out=<file to write results to>]");
+    System.exit(0);
+  }
+}
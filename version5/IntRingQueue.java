@@ -0,0 +1,182 @@
+/**
+ * Allocation-free FIFO queue of philosopher indices. Entries live in an int ring
+ * buffer and every philosopher's slot is remembered, so a philosopher can be
+ * added at either end or removed from anywhere in constant time. Removing from
+ * the middle leaves a hole that is skipped once it reaches the head. A
+ * philosopher is queued at most once; adding it again moves it.
+ * @author David Lin
+ */
+public class IntRingQueue {
+
+  /** Marks an empty slot or a philosopher that is not queued. */
+  private static final int NONE = -1;
+
+  /** Ring buffer, length is a power of two. */
+  private int slots[];
+  private int mask;
+  private int head;
+  /** Slots in use from head, including holes. */
+  private int used;
+  /** Philosophers in the queue. */
+  private int size;
+
+  /** Slot of each philosopher, NONE if not queued. */
+  private int position[];
+
+  /**
+   * Create an empty queue.
+   * @param numPhils Number of philosophers that can be queued
+   */
+  public IntRingQueue(int numPhils) {
+    // At least twice the philosophers so holes rarely force a compaction
+    int capacity = Integer.highestOneBit(Math.max(1, 2 * numPhils - 1)) << 1;
+    slots = new int[capacity];
+    mask = capacity - 1;
+    position = new int[numPhils];
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = NONE;
+    }
+    for (int i = 0; i < numPhils; i++) {
+      position[i] = NONE;
+    }
+  }
+
+  /**
+   * Add a philosopher to the tail of the queue.
+   * @param phil Philosopher's index on table
+   */
+  public void add(int phil) {
+    remove(phil);
+    if (used == slots.length) {
+      compact();
+    }
+    int slot = (head + used) & mask;
+    slots[slot] = phil;
+    position[phil] = slot;
+    used++;
+    size++;
+  }
+
+  /**
+   * Add a philosopher to the head of the queue.
+   * @param phil Philosopher's index on table
+   */
+  public void addFirst(int phil) {
+    remove(phil);
+    if (used == slots.length) {
+      compact();
+    }
+    head = (head - 1) & mask;
+    slots[head] = phil;
+    position[phil] = head;
+    used++;
+    size++;
+  }
+
+  /**
+   * Return the philosopher at the head of the queue without removing it.
+   * @return Philosopher's index, or -1 if the queue is empty
+   */
+  public int peek() {
+    return (size == 0) ? NONE : slots[head];
+  }
+
+  /**
+   * Remove the philosopher at the head of the queue.
+   * @return Philosopher's index, or -1 if the queue is empty
+   */
+  public int poll() {
+    int phil = peek();
+    if (phil != NONE) {
+      remove(phil);
+    }
+    return phil;
+  }
+
+  /**
+   * Remove a philosopher from wherever it is in the queue.
+   * @param phil Philosopher's index on table
+   * @return true if the philosopher was queued
+   */
+  public boolean remove(int phil) {
+    int slot = position[phil];
+    if (slot == NONE) {
+      return false;
+    }
+    slots[slot] = NONE;
+    position[phil] = NONE;
+    size--;
+    // Drop holes at either end so head always points at a philosopher
+    while (used > 0 && slots[head] == NONE) {
+      head = (head + 1) & mask;
+      used--;
+    }
+    while (used > 0 && slots[(head + used - 1) & mask] == NONE) {
+      used--;
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a philosopher is queued.
+   * @param phil Philosopher's index on table
+   * @return true if the philosopher is in the queue
+   */
+  public boolean contains(int phil) {
+    return position[phil] != NONE;
+  }
+
+  /**
+   * Return the number of philosophers in the queue.
+   * @return queue length
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Check whether the queue is empty.
+   * @return true if no philosopher is queued
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Slide queued philosophers towards the head over the holes left by remove().
+   * Only runs when the buffer is full, which needs at least as many holes as
+   * philosophers, so its cost is spread over the removals that made the holes.
+   */
+  private void compact() {
+    int write = 0;
+    for (int read = 0; read < used; read++) {
+      int phil = slots[(head + read) & mask];
+      if (phil != NONE) {
+        int slot = (head + write) & mask;
+        slots[slot] = phil;
+        position[phil] = slot;
+        write++;
+      }
+    }
+    for (int i = write; i < used; i++) {
+      slots[(head + i) & mask] = NONE;
+    }
+    used = write;
+  }
+
+  /**
+   * List the queued philosophers from head to tail.
+   * @return philosopher indices separated by spaces
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < used; i++) {
+      int phil = slots[(head + i) & mask];
+      if (phil != NONE) {
+        builder.append(phil).append(' ');
+      }
+    }
+    return builder.toString();
+  }
+}
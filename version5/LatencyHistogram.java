@@ -0,0 +1,247 @@
+import java.io.PrintStream;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, in the style of
+ * HdrHistogram. Values below 64 get a bucket each; above that every power of
+ * two is split into 32 buckets, so a recorded value is off by at most about 3%.
+ * Values up to 2^44ns (almost five hours) fit, longer ones count as the
+ * largest.
+ * <p>
+ * Buckets are kept in pages of 32, one per power of two, and a page is only
+ * allocated the first time a value lands in it. An empty histogram holds no
+ * buckets at all, and a philosopher whose hungry times span a few powers of
+ * two needs a few hundred bytes, so a table of a million seats fits. Recording
+ * is lock free with a single writer: each philosopher owns its histogram.
+ * Readers such as the end of run report see a consistent view once the writer
+ * is quiet, and merge the histograms into a table-wide one.
+ * @author David Lin
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+  private static final int MAX_BITS = 44;
+  private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+  private static final int NUM_BUCKETS =
+      LINEAR_LIMIT + (MAX_BITS - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+  private static final int NUM_PAGES = NUM_BUCKETS / SUB_BUCKETS;
+
+  /** Percentiles in the report. */
+  private static final double PERCENTILES[] = {50.0, 90.0, 99.0, 99.9};
+
+  /* Bucket counts in pages of SUB_BUCKETS, null until the first value of a
+   * page is recorded. */
+  private int pages[][];
+  private long totalCount;
+  private long totalTime;
+  private long maxValue;
+
+  /**
+   * Create an empty histogram.
+   */
+  public LatencyHistogram() {
+  }
+
+  /**
+   * Record one latency.
+   * @param nanos Latency in nanoseconds, negative values count as 0
+   */
+  public void record(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+    int index = bucket(value);
+    page(index)[index & (SUB_BUCKETS - 1)]++;
+    totalCount++;
+    totalTime += value;
+    if (value > maxValue) {
+      maxValue = value;
+    }
+  }
+
+  /**
+   * Add another histogram's counts to this one.
+   * @param other Histogram to merge in
+   */
+  public void add(LatencyHistogram other) {
+    int otherPages[][] = other.pages;
+    if (otherPages != null) {
+      for (int p = 0; p < NUM_PAGES; p++) {
+        int otherCounts[] = otherPages[p];
+        if (otherCounts == null) {
+          continue;
+        }
+        int counts[] = page(p * SUB_BUCKETS);
+        for (int i = 0; i < SUB_BUCKETS; i++) {
+          counts[i] += otherCounts[i];
+        }
+      }
+    }
+    totalCount += other.totalCount;
+    totalTime += other.totalTime;
+    maxValue = Math.max(maxValue, other.maxValue);
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Return the sum of all recorded latencies.
+   * @return Total in nanoseconds
+   */
+  public long getTotalTime() {
+    return totalTime;
+  }
+
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Return the latency at or below which the given share of values fall.
+   * @param percentile Between 0 and 100
+   * @return Latency in nanoseconds, 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += count(i);
+      if (seen >= target) {
+        return Math.min(highestValue(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  /**
+   * Return how many recorded values are at or below a limit, counting a bucket
+   * once its largest value is within the limit.
+   * @param nanos Limit in nanoseconds
+   * @return Number of values
+   */
+  public long getCountAtOrBelow(long nanos) {
+    long count = 0;
+    for (int i = 0; i < NUM_BUCKETS && highestValue(i) <= nanos; i++) {
+      count += count(i);
+    }
+    return count;
+  }
+
+  /**
+   * Return the upper edge of the bucket a value falls into. Counting at or
+   * below an edge is exact, while a limit inside a bucket leaves that bucket
+   * out.
+   * @param nanos Value in nanoseconds
+   * @return Largest value of its bucket, in nanoseconds
+   */
+  public static long getBucketEdge(long nanos) {
+    return highestValue(bucket(Math.min(Math.max(nanos, 0), MAX_VALUE)));
+  }
+
+  /**
+   * Print the percentiles of the report on one line.
+   * @param out Stream to print to
+   * @param label What the latencies are
+   */
+  public void printPercentiles(PrintStream out, String label) {
+    out.println(formatPercentiles(label));
+  }
+
+  /**
+   * Format the percentiles of the report on one line.
+   * @param label What the latencies are
+   * @return Label followed by percentiles in milliseconds
+   */
+  public String formatPercentiles(String label) {
+    StringBuilder line = new StringBuilder(label);
+    for (double percentile : PERCENTILES) {
+      line.append(" p").append(percentile >= 99.9 ? "99.9" : String.valueOf((int) percentile))
+          .append(": ").append(getValueAtPercentile(percentile) / 1000000.0).append("ms");
+    }
+    line.append(" max: ").append(maxValue / 1000000.0).append("ms");
+    return line.toString();
+  }
+
+  /**
+   * Export every non-empty bucket as comma separated values, with the upper
+   * bound of the bucket, its count and the percentile reached so far.
+   * @param out Stream to write to
+   */
+  public void export(PrintStream out) {
+    out.println("value_ms,count,percentile");
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      int count = count(i);
+      if (count == 0) {
+        continue;
+      }
+      seen += count;
+      out.println((Math.min(highestValue(i), maxValue) / 1000000.0) + "," + count + ","
+          + (100.0 * seen / totalCount));
+    }
+  }
+
+  /**
+   * Return the count of a bucket.
+   * @param index Bucket index
+   * @return Values recorded in the bucket, 0 if its page was never allocated
+   */
+  private int count(int index) {
+    // Read once, the writer may be allocating pages meanwhile
+    int current[][] = pages;
+    if (current == null) {
+      return 0;
+    }
+    int counts[] = current[index / SUB_BUCKETS];
+    return counts == null ? 0 : counts[index & (SUB_BUCKETS - 1)];
+  }
+
+  /**
+   * Return the page holding a bucket, allocating it on first use.
+   * @param index Bucket index
+   * @return Counts of the bucket's page
+   */
+  private int[] page(int index) {
+    if (pages == null) {
+      pages = new int[NUM_PAGES][];
+    }
+    int counts[] = pages[index / SUB_BUCKETS];
+    if (counts == null) {
+      counts = new int[SUB_BUCKETS];
+      pages[index / SUB_BUCKETS] = counts;
+    }
+    return counts;
+  }
+
+  /**
+   * Find the bucket of a value.
+   * @param value Value between 0 and MAX_VALUE
+   * @return Bucket index
+   */
+  private static int bucket(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    // Shift so the top SUB_BUCKET_BITS + 1 bits remain, between 32 and 63
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * Return the largest value that falls into a bucket.
+   * @param index Bucket index
+   * @return Value in nanoseconds
+   */
+  private static long highestValue(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    long top = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+}
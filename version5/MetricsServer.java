@@ -0,0 +1,259 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded HTTP server on the loopback interface serving the table's metrics
+ * at /metrics in the Prometheus text format. A scrape only reads counters,
+ * LongAdders and the philosophers' single-writer histograms; it never takes a
+ * fork arbiter's lock, so scraping doesn't slow the table down.
+ * <p>
+ * Run this class on its own for a self-check over loopback: it starts a server
+ * on a free port, scrapes it and checks the exposition format and the
+ * histogram counts against known hungry times.
+ * @author David Lin
+ */
+public class MetricsServer implements HttpHandler {
+
+  /** Bounds of the exported hungry time histogram buckets, in seconds. Each is
+   * rounded up to the edge of the LatencyHistogram bucket it falls into, so the
+   * exported counts are exact. */
+  private static final double BUCKETS[] = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10,
+      30, 60};
+
+  /** A sample line: name, optional labels, value. */
+  private static final Pattern SAMPLE =
+      Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*(\\{[a-z_]+=\"[^\"]*\"\\})? [-+0-9.eEInfa]+");
+
+  private HttpServer server;
+  private TableMetrics metrics;
+  private ForkArbiter monitor;
+  private List<? extends Philosopher> philosophers;
+
+  /**
+   * Bind the server to the loopback interface.
+   * @param port Port to listen on, 0 for any free port
+   * @param metrics Live counters of the table
+   * @param monitor Fork arbiter shared by the philosophers
+   * @param philosophers Philosophers at the table
+   * @throws IOException if the port can't be bound
+   */
+  public MetricsServer(int port, TableMetrics metrics, ForkArbiter monitor,
+      List<? extends Philosopher> philosophers) throws IOException {
+    this.metrics = metrics;
+    this.monitor = monitor;
+    this.philosophers = philosophers;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/metrics", this);
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Return the port the server is listening on.
+   * @return Port number
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Serve one scrape.
+   * @param exchange Request and response
+   * @throws IOException if the response can't be written
+   */
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    byte body[] = scrape().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * Format every metric in the Prometheus text format.
+   * @return Page served at /metrics
+   */
+  public String scrape() {
+    StringBuilder page = new StringBuilder();
+    metric(page, "dining_meals_total", "counter", "Meals started.", metrics.getMeals());
+    metric(page, "dining_hungry_philosophers", "gauge", "Philosophers waiting for forks.",
+        metrics.getHungryCount());
+    metric(page, "dining_queue_length", "gauge", "Philosophers in the fork arbiter's queue.",
+        monitor.getQueueLength());
+    metric(page, "dining_fork_waits_total", "counter",
+        "Times a philosopher had to wait for forks.", monitor.getWaitCount());
+    metric(page, "dining_wasted_wakeups_total", "counter",
+        "Waiting philosophers woken without getting forks.", monitor.getWastedWakeups());
+    metric(page, "dining_lock_hold_seconds_total", "counter",
+        "Time the fork arbiter's lock was held, not counting waits.",
+        monitor.getLockHoldTime() / 1e9);
+    metric(page, "dining_lock_holds_total", "counter",
+        "Pickup and putdown calls that held the fork arbiter's lock.", monitor.getLockHolds());
+
+    // Table-wide hungry time histogram
+    LatencyHistogram table = metrics.tableHistogram();
+    page.append("# HELP dining_hungry_seconds Time from getting hungry to holding both forks.\n");
+    page.append("# TYPE dining_hungry_seconds histogram\n");
+    for (double bucket : BUCKETS) {
+      long edge = LatencyHistogram.getBucketEdge((long) (bucket * 1e9));
+      page.append("dining_hungry_seconds_bucket{le=\"").append(edge / 1e9).append("\"} ")
+          .append(table.getCountAtOrBelow(edge)).append('\n');
+    }
+    page.append("dining_hungry_seconds_bucket{le=\"+Inf\"} ").append(table.getTotalCount())
+        .append('\n');
+    page.append("dining_hungry_seconds_sum ").append(table.getTotalTime() / 1e9).append('\n');
+    page.append("dining_hungry_seconds_count ").append(table.getTotalCount()).append('\n');
+
+    // Per seat
+    page.append("# HELP dining_seat_meals_total Meals started at each seat.\n");
+    page.append("# TYPE dining_seat_meals_total counter\n");
+    for (int i = 0; i < philosophers.size(); i++) {
+      page.append("dining_seat_meals_total{seat=\"").append(i).append("\"} ")
+          .append(philosophers.get(i).getHungryHistogram().getTotalCount()).append('\n');
+    }
+    page.append("# HELP dining_seat_hungry_seconds_total Time each seat spent hungry.\n");
+    page.append("# TYPE dining_seat_hungry_seconds_total counter\n");
+    for (int i = 0; i < philosophers.size(); i++) {
+      page.append("dining_seat_hungry_seconds_total{seat=\"").append(i).append("\"} ")
+          .append(philosophers.get(i).getHungryHistogram().getTotalTime() / 1e9).append('\n');
+    }
+    return page.toString();
+  }
+
+  /**
+   * Self-check over loopback. Seats a small table that never runs, records
+   * known hungry times, serves them on a free port and checks the scrape.
+   * Exits with status 1 if anything is off.
+   * @param args Ignored
+   * @throws IOException if the server can't be started or scraped
+   */
+  public static void main(String[] args) throws IOException {
+    int numPhils = 5;
+    ForkArbiter monitor = new ForkMonitor(TableListener.NONE, numPhils);
+    List<Philosopher> philosophers = new ArrayList<Philosopher>();
+    TableMetrics metrics = new TableMetrics("monitor", monitor, philosophers);
+    Workload workload = new Workload(Workload.UNIFORM, 1);
+    PauseGate gate = new PauseGate();
+    long hungryTimes[] = {0, 999999, 1000000, 1040000, 7000000, 250000000, 3000000000L,
+        90000000000L};
+    for (int i = 0; i < numPhils; i++) {
+      philosophers.add(new Philosopher(i, i, (i + numPhils - 1) % numPhils, TableListener.NONE,
+          Timing.DEFAULT, monitor, gate, workload.newStream(), metrics));
+    }
+    for (int i = 0; i < hungryTimes.length; i++) {
+      philosophers.get(i % numPhils).getHungryHistogram().record(hungryTimes[i]);
+    }
+
+    MetricsServer server = new MetricsServer(0, metrics, monitor, philosophers);
+    server.start();
+    List<String> problems = new ArrayList<String>();
+    try {
+      URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(),
+          server.getPort(), "/metrics");
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      if (connection.getResponseCode() != 200) {
+        problems.add("Status " + connection.getResponseCode());
+      }
+      if (!connection.getContentType().startsWith("text/plain; version=0.0.4")) {
+        problems.add("Content type " + connection.getContentType());
+      }
+      Set<String> typed = new HashSet<String>();
+      long lastBucket = 0;
+      try (BufferedReader in = new BufferedReader(new InputStreamReader(
+          connection.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.startsWith("# TYPE ")) {
+            typed.add(line.split(" ")[2]);
+            continue;
+          }
+          if (line.startsWith("# HELP ")) {
+            continue;
+          }
+          if (!SAMPLE.matcher(line).matches()) {
+            problems.add("Malformed line: " + line);
+            continue;
+          }
+          String name = line.split("[{ ]")[0];
+          String family = name.replaceAll("_(bucket|sum|count)$", "");
+          if (!typed.contains(name) && !typed.contains(family)) {
+            problems.add("Sample before its TYPE: " + line);
+          }
+          if (!name.equals("dining_hungry_seconds_bucket")) {
+            continue;
+          }
+          // Cumulative counts must match the recorded times exactly
+          String le = line.substring(line.indexOf("le=\"") + 4, line.indexOf("\"}"));
+          long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+          long expected = 0;
+          for (long time : hungryTimes) {
+            if (le.equals("+Inf") || time <= Math.round(Double.parseDouble(le) * 1e9)) {
+              expected++;
+            }
+          }
+          if (count != expected || count < lastBucket) {
+            problems.add("Bucket le=" + le + " has " + count + ", expected " + expected);
+          }
+          lastBucket = count;
+        }
+      }
+      if (lastBucket != hungryTimes.length) {
+        problems.add("+Inf bucket has " + lastBucket + ", expected " + hungryTimes.length);
+      }
+    }
+    finally {
+      server.stop();
+    }
+    for (String problem : problems) {
+      System.out.println(problem);
+    }
+    System.out.println(problems.isEmpty() ? "Metrics self-check passed"
+        : "Metrics self-check failed");
+    System.exit(problems.isEmpty() ? 0 : 1);
+  }
+
+  /**
+   * Append a metric without labels.
+   * @param page Page being built
+   * @param name Metric name
+   * @param type counter or gauge
+   * @param help Description of the metric
+   * @param value Current value
+   */
+  private static void metric(StringBuilder page, String name, String type, String help,
+      double value) {
+    page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    page.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    page.append(name).append(' ');
+    if (value == Math.rint(value)) {
+      page.append((long) value);
+    }
+    else {
+      page.append(value);
+    }
+    page.append('\n');
+  }
+}
@@ -0,0 +1,93 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork arbiter using the resource hierarchy solution. Each fork is a lock, and
+ * every philosopher picks up its lower numbered fork first. That breaks the
+ * circular wait that lets version1 deadlock once everybody holds a left fork,
+ * without a global monitor or queue.
+ * <p>
+ * With forks i and i - 1 at seat i, everybody but philosopher 0 takes its right
+ * fork first, while philosopher 0 takes its left. Acquisition latency is kept
+ * per fork so the effect of that asymmetry shows up in the report.
+ * @author David Lin
+ */
+public class OrderedForkTable implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private ReentrantLock forks[];
+
+  /** Per-fork latency, only updated by the philosopher holding that fork. */
+  private long waitTime[];
+  private long maxWaitTime[];
+  private long acquisitions[];
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public OrderedForkTable(TableListener listener, int numForks) {
+    this.listener = listener;
+    forks = new ReentrantLock[numForks];
+    waitTime = new long[numForks];
+    maxWaitTime = new long[numForks];
+    acquisitions = new long[numForks];
+    for (int i = 0; i < numForks; i++) {
+      forks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Pick up the lower numbered fork, then the higher numbered one.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    pickupFork(phil, Math.min(leftFork, rightFork));
+    pickupFork(phil, Math.max(leftFork, rightFork));
+  }
+
+  /**
+   * Put down left and right forks.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    listener.setForkAvailable(leftFork);
+    listener.setForkAvailable(rightFork);
+    forks[Math.max(leftFork, rightFork)].unlock();
+    forks[Math.min(leftFork, rightFork)].unlock();
+  }
+
+  /**
+   * Pick up one fork, recording how long it took.
+   * @param phil Philosopher's index on table
+   * @param fork Index of fork on table
+   */
+  private void pickupFork(int phil, int fork) {
+    long start = System.nanoTime();
+    forks[fork].lock();
+    long wait = System.nanoTime() - start;
+    waitTime[fork] += wait;
+    maxWaitTime[fork] = Math.max(maxWaitTime[fork], wait);
+    acquisitions[fork]++;
+    listener.setForkTaken(fork, phil);
+  }
+
+  /**
+   * Print average and worst acquisition latency of each fork.
+   */
+  @Override
+  public void printStats() {
+    for (int i = 0; i < forks.length; i++) {
+      long count = Math.max(1, acquisitions[i]);
+      System.out.println("Fork #" + i + " pickups: " + acquisitions[i]
+          + ", average wait: " + (waitTime[i] / count / 1000000.0) + "ms"
+          + ", max wait: " + (maxWaitTime[i] / 1000000.0) + "ms");
+    }
+  }
+}
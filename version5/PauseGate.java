@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single pause barrier shared by every philosopher. Checking the gate is one
+ * volatile read while the program runs; only philosophers that actually hit it
+ * while paused take the lock. Sleeping philosophers are left alone rather than
+ * interrupted, and a pause simply pushes their wake up time back by however
+ * long it lasted.
+ * <p>
+ * Philosophers report when they are running code and when they are quiet
+ * (sleeping, blocked for forks or parked at the gate), so the gate can tell how
+ * long it took from a pause request until the whole table was still.
+ * @author David Lin
+ */
+public class PauseGate {
+
+  private ReentrantLock lock;
+  private Condition resumed;
+  private Condition still;
+  private volatile boolean paused;
+
+  /** Total time spent paused, so sleepers can extend their deadline. */
+  private volatile long pausedTime;
+  private long pauseStart;
+
+  /** Philosophers running code rather than sleeping, blocked or parked. */
+  private AtomicInteger running;
+
+  /** Steps of event-driven philosophers held back until resume. */
+  private List<Runnable> held;
+
+  /** Pause latency, guarded by lock. */
+  private boolean quiesced;
+  private int pauses;
+  private long lastLatency;
+  private long maxLatency;
+
+  /**
+   * Create an open gate.
+   */
+  public PauseGate() {
+    lock = new ReentrantLock();
+    resumed = lock.newCondition();
+    still = lock.newCondition();
+    running = new AtomicInteger();
+    held = new ArrayList<Runnable>();
+  }
+
+  /**
+   * Close the gate, philosophers stop at their next check.
+   */
+  public void pause() {
+    lock.lock();
+    try {
+      if (paused) {
+        return;
+      }
+      pauseStart = System.nanoTime();
+      quiesced = false;
+      pauses++;
+      paused = true;
+      if (running.get() == 0) {
+        recordQuiesced();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Open the gate, waking parked philosophers and resuming held steps.
+   */
+  public void resume() {
+    List<Runnable> steps;
+    lock.lock();
+    try {
+      if (!paused) {
+        return;
+      }
+      pausedTime += System.nanoTime() - pauseStart;
+      paused = false;
+      resumed.signalAll();
+      steps = held;
+      held = new ArrayList<Runnable>();
+    }
+    finally {
+      lock.unlock();
+    }
+    for (Runnable step : steps) {
+      step.run();
+    }
+  }
+
+  /**
+   * Wait until the current pause has stilled the table. Returns at once if the
+   * gate is open.
+   */
+  public void awaitStill() {
+    lock.lock();
+    try {
+      while (paused && !quiesced) {
+        still.awaitUninterruptibly();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * A philosopher starts running code.
+   */
+  public void enter() {
+    running.incrementAndGet();
+  }
+
+  /**
+   * A philosopher stops running code, the table may now be still.
+   */
+  public void exit() {
+    if (running.decrementAndGet() == 0 && paused) {
+      lock.lock();
+      try {
+        if (paused && running.get() == 0) {
+          recordQuiesced();
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Park here while the gate is closed. The caller must be running.
+   */
+  public void await() {
+    if (!paused) {
+      return;
+    }
+    exit();
+    lock.lock();
+    try {
+      while (paused) {
+        resumed.awaitUninterruptibly();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+    enter();
+  }
+
+  /**
+   * Hold back a step of an event-driven philosopher while the gate is closed.
+   * @param onResume Run once the gate opens again
+   * @return true if held, false if the gate is open and the step should run now
+   */
+  public boolean hold(Runnable onResume) {
+    if (!paused) {
+      return false;
+    }
+    lock.lock();
+    try {
+      if (!paused) {
+        return false;
+      }
+      held.add(onResume);
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sleep as a quiet philosopher. Time spent paused does not count, and a
+   * philosopher whose sleep ends while paused parks at the gate.
+   * @param millis Milliseconds to sleep
+   */
+  public void sleep(long millis) {
+    long deadline = System.nanoTime() + millis * 1000000L;
+    long pausedBefore = pausedTime;
+    exit();
+    while (true) {
+      if (paused) {
+        lock.lock();
+        try {
+          while (paused) {
+            resumed.awaitUninterruptibly();
+          }
+        }
+        finally {
+          lock.unlock();
+        }
+      }
+      long remaining = deadline + (pausedTime - pausedBefore) - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      try {
+        Thread.sleep(remaining / 1000000L, (int) (remaining % 1000000L));
+      }
+      catch (InterruptedException e) {
+        // Keep sleeping for what is left
+      }
+    }
+    enter();
+  }
+
+  /**
+   * Record how long the current pause took to still the table. Lock must be held.
+   */
+  private void recordQuiesced() {
+    if (quiesced) {
+      return;
+    }
+    quiesced = true;
+    lastLatency = System.nanoTime() - pauseStart;
+    maxLatency = Math.max(maxLatency, lastLatency);
+    still.signalAll();
+  }
+
+  /**
+   * Print how quickly pauses took effect.
+   */
+  public void printStats() {
+    lock.lock();
+    try {
+      System.out.println("Pauses: " + pauses + ", last pause latency: "
+          + (lastLatency / 1000000.0) + "ms, max: " + (maxLatency / 1000000.0) + "ms");
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+}
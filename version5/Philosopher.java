@@ -1,135 +1,163 @@
-import java.util.Random;
+import java.util.concurrent.ThreadFactory;
 
 /**
- * Philosopher that thinks, picks up forks, eats, and puts down forks.
+ * Philosopher that thinks, picks up forks, eats, and puts down forks. It runs on
+ * a thread of its own, which can be a platform or a virtual thread, and stops
+ * at a pause gate shared with the rest of the table.
  * @author David Lin
  */
-public class Philosopher extends Thread implements Runnable {
+public class Philosopher implements Runnable {
 
   /** Philosopher data items. */
-  private int phil;
-  private int leftFork;
-  private int rightFork;
-  private DiningPhilosophersDisplay display;
-  private ForkMonitor monitor;
-  private Random rand;
-  private long hungryTime;
+  protected int phil;
+  protected int leftFork;
+  protected int rightFork;
+  protected TableListener listener;
+  private TimingSource timing;
+  private ForkArbiter monitor;
+  private Workload.Stream times;
+  private LatencyHistogram hungryTime;
 
-  private volatile boolean paused = false;
+  /* Start of the hungry interval still open, guarded by this philosopher. */
+  private boolean hungry;
+  private long hungrySince;
+  protected PauseGate gate;
+  protected TableMetrics metrics;
+
+  /** Thread running this philosopher. */
+  private Thread thread;
 
   /**
    * Initialize philosopher's data items.
    * @param phil Philosopher's index on table
    * @param leftFork Index of philosopher's left fork on table
    * @param rightFork Index of philosopher's right fork on table
-   * @param display GUI accessor
-   * @param monitor Fork monitor
+   * @param listener Told about state changes and forks changing hands
+   * @param timing Think and eat time ranges
+   * @param monitor Fork monitor or other fork arbiter
+   * @param gate Pause gate shared by all philosophers
+   * @param times Philosopher's own stream of think and eat times
+   * @param metrics Live counters of the table
    */
-  public Philosopher(int phil, int leftFork, int rightFork, DiningPhilosophersDisplay display,
-      ForkMonitor monitor) {
+  public Philosopher(int phil, int leftFork, int rightFork, TableListener listener,
+      TimingSource timing, ForkArbiter monitor, PauseGate gate, Workload.Stream times,
+      TableMetrics metrics) {
     this.phil = phil;
     this.leftFork = leftFork;
     this.rightFork = rightFork;
-    this.display = display;
+    this.listener = listener;
+    this.timing = timing;
     this.monitor = monitor;
-    this.rand = new Random();
-    this.hungryTime = 0;
+    this.times = times;
+    this.hungryTime = new LatencyHistogram();
+    this.gate = gate;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Start the philosopher on a new platform thread.
+   */
+  public void start() {
+    thread = new Thread(this);
+    thread.start();
+  }
+
+  /**
+   * Start the philosopher on a thread from the given factory.
+   * @param factory Factory for the philosopher's thread
+   */
+  public void start(ThreadFactory factory) {
+    thread = factory.newThread(this);
+    thread.start();
   }
 
   /**
    * Cycle through philosopher states.
    */
   public void run() {
+    gate.enter();
     while (true) {
       // Think
-      checkPaused();
-      display.setPhilosopherState(phil, DiningPhilosophersDisplay.THINKING);
-      goSleep(getThinkTime());
+      gate.await();
+      changeState(TableListener.THINKING);
+      gate.sleep(getThinkTime());
 
       // Hungry, pick up left and right forks
-      checkPaused();
-      long startHungry = System.currentTimeMillis();
-      display.setPhilosopherState(phil, DiningPhilosophersDisplay.HUNGRY);
+      gate.await();
+      beginHungry();
+      changeState(TableListener.HUNGRY);
+      metrics.hungry();
+      // Blocked for forks counts as quiet
+      gate.exit();
       monitor.pickupForks(phil, leftFork, rightFork);
-      long stopHungry = System.currentTimeMillis();
-      hungryTime += stopHungry - startHungry;
+      gate.enter();
+      endHungry();
+      metrics.ate();
 
       // Eat
-      checkPaused();
-      display.setPhilosopherState(phil, DiningPhilosophersDisplay.EATING);
-      goSleep(getEatTime());
+      gate.await();
+      changeState(TableListener.EATING);
+      gate.sleep(getEatTime());
 
       // Put forks down
-      checkPaused();
+      gate.await();
       monitor.putdownForks(leftFork, rightFork);
     }
   }
 
   /**
-   * Get the amount of time to think between the user-selected min and max.
-   * @return The time to think in milliseconds
+   * Report a new state and emit it as a flight recorder event.
+   * @param state One of TableListener THINKING, HUNGRY or EATING
    */
-  private long getThinkTime() {
-    int min = display.getMinThinkTime() * 1000;
-    int max = display.getMaxThinkTime() * 1000;
-    //return (rand.nextInt(max - min + 1) + min) * 1000;
-    return (min + (long)(rand.nextDouble() * (max - min)));
+  protected void changeState(int state) {
+    listener.setPhilosopherState(phil, state);
+    ForkEvents.stateChange(phil, state);
   }
 
   /**
-   * Get the amount of time to eat between the user-selected min and max.
-   * @return The time to eat in milliseconds
+   * Open a hungry interval, the philosopher goes for its forks.
    */
-  private long getEatTime() {
-    int min = display.getMinEatTime() * 1000;
-    int max = display.getMaxEatTime() * 1000;
-    //return (rand.nextInt(max - min + 1) + min) * 1000;
-    return (min + (long)(rand.nextDouble() * (max - min)));
+  protected synchronized void beginHungry() {
+    hungrySince = System.nanoTime();
+    hungry = true;
   }
 
   /**
-   * Helper function for thread to sleep.
-   * @param val Milliseconds to sleep
+   * Close the open hungry interval, the philosopher got its forks.
    */
-  private void goSleep(long val) {
-    long start = System.currentTimeMillis();
-    try {
-      Thread.sleep(val);
-    }
-    catch (InterruptedException e) {
-      long stop = System.currentTimeMillis();
-      checkPaused();
-      long remainder = val - (stop - start);
-      // Resume sleeping
-      goSleep(remainder);
-    }
+  protected void endHungry() {
+    closeHungry(System.nanoTime());
   }
 
   /**
-   * Check if program is paused.
+   * Record the open hungry interval as ending now, if there is one. The end of
+   * a run calls this for philosophers still waiting for forks, so starving
+   * through a whole run shows in the report.
+   * @param now Current System.nanoTime()
    */
-  private synchronized void checkPaused() {
-    // Pause thread
-    while (paused == true) {
-      try {
-        wait();
-      }
-      catch (InterruptedException e) {
-        // do nothing
-      }
-    }
-    // Resume thread
-    if (paused == false) {
-      notifyAll();
+  public synchronized void closeHungry(long now) {
+    if (hungry) {
+      hungry = false;
+      hungryTime.record(now - hungrySince);
     }
   }
 
   /**
-   * Set pause status.
-   * @param val true to pause, false to resume
+   * Get the amount of time to think between the current min and max.
+   * @return The time to think in milliseconds
+   */
+  protected long getThinkTime() {
+    Timing current = timing.getTiming();
+    return times.nextThinkTime(current.getMinThinkTime(), current.getMaxThinkTime());
+  }
+
+  /**
+   * Get the amount of time to eat between the current min and max.
+   * @return The time to eat in milliseconds
    */
-  public void setPaused(boolean val) {
-    paused = val;
+  protected long getEatTime() {
+    Timing current = timing.getTiming();
+    return times.nextEatTime(current.getMinEatTime(), current.getMaxEatTime());
   }
 
   /**
@@ -137,6 +165,15 @@ public class Philosopher extends Thread implements Runnable {
    * @return hungry time in milliseconds
    */
   public long getHungryTime() {
+    return hungryTime.getTotalTime() / 1000000;
+  }
+
+  /**
+   * Return every hungry interval of this philosopher, written by its own
+   * thread, and by the end of the run once the table is still.
+   * @return Histogram of hungry time in nanoseconds
+   */
+  public LatencyHistogram getHungryHistogram() {
     return hungryTime;
   }
 }
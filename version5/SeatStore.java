@@ -0,0 +1,179 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Compact per-seat state for very large tables. Instead of an object per
+ * philosopher, every field is a column of its own in direct (off-heap) memory:
+ * one byte of state per seat, ints for the owner of each fork and for who waits
+ * on it, and longs for the hungry-since timestamp, accumulated hungry time,
+ * arrival order and the seed of the seat's think and eat times. That is 41
+ * bytes a seat, nothing for the garbage collector to trace, and a scan over one
+ * field walks contiguous memory.
+ * <p>
+ * Seat i uses forks i and i - 1, the same as the threaded programs. The store
+ * is not thread safe; it is meant for a single-threaded engine such as
+ * DiningSimulation.
+ * @author David Lin
+ */
+public class SeatStore {
+
+  /** Marks a fork on the table or an unset field. */
+  public static final int NONE = -1;
+
+  /** Bytes per seat over all columns. */
+  public static final int BYTES_PER_SEAT = 1 + 4 + 4 + 8 + 8 + 8 + 8;
+
+  private int numSeats;
+
+  /** Columns, one entry per seat or fork. */
+  private ByteBuffer state;
+  private IntBuffer forkOwner;
+  private IntBuffer forkWaiter;
+  private LongBuffer hungrySince;
+  private LongBuffer hungryTotal;
+  private LongBuffer arrival;
+  private LongBuffer seed;
+
+  /**
+   * Allocate a table with every philosopher thinking and every fork free.
+   * @param numSeats Number of philosophers, and of forks
+   */
+  public SeatStore(int numSeats) {
+    if (numSeats < 1 || numSeats > Integer.MAX_VALUE / 8) {
+      throw new IllegalArgumentException("Invalid number of seats " + numSeats);
+    }
+    this.numSeats = numSeats;
+    state = ByteBuffer.allocateDirect(numSeats);
+    forkOwner = allocate(numSeats * 4).asIntBuffer();
+    forkWaiter = allocate(numSeats * 4).asIntBuffer();
+    hungrySince = allocate(numSeats * 8).asLongBuffer();
+    hungryTotal = allocate(numSeats * 8).asLongBuffer();
+    arrival = allocate(numSeats * 8).asLongBuffer();
+    seed = allocate(numSeats * 8).asLongBuffer();
+    for (int i = 0; i < numSeats; i++) {
+      state.put(i, (byte) TableListener.THINKING);
+      forkOwner.put(i, NONE);
+      forkWaiter.put(i, NONE);
+    }
+  }
+
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  public int size() {
+    return numSeats;
+  }
+
+  public int leftFork(int phil) {
+    return phil;
+  }
+
+  public int rightFork(int phil) {
+    return (phil == 0) ? numSeats - 1 : phil - 1;
+  }
+
+  /**
+   * Return a philosopher's state.
+   * @param phil Philosopher's index on table
+   * @return One of TableListener THINKING, HUNGRY or EATING
+   */
+  public int getState(int phil) {
+    return state.get(phil);
+  }
+
+  public void setState(int phil, int val) {
+    state.put(phil, (byte) val);
+  }
+
+  /**
+   * Return who holds a fork.
+   * @param fork Index of fork on table
+   * @return Philosopher's index, or NONE if the fork is on the table
+   */
+  public int getForkOwner(int fork) {
+    return forkOwner.get(fork);
+  }
+
+  public void setForkOwner(int fork, int phil) {
+    forkOwner.put(fork, phil);
+  }
+
+  /**
+   * Check whether both of a philosopher's forks are on the table.
+   * @param phil Philosopher's index on table
+   * @return true if both forks are free
+   */
+  public boolean bothFree(int phil) {
+    return forkOwner.get(leftFork(phil)) == NONE && forkOwner.get(rightFork(phil)) == NONE;
+  }
+
+  /**
+   * Return who is waiting for a single fork to come free.
+   * @param fork Index of fork on table
+   * @return Philosopher's index, or NONE if nobody is waiting
+   */
+  public int getForkWaiter(int fork) {
+    return forkWaiter.get(fork);
+  }
+
+  public void setForkWaiter(int fork, int phil) {
+    forkWaiter.put(fork, phil);
+  }
+
+  public long getArrival(int phil) {
+    return arrival.get(phil);
+  }
+
+  public void setArrival(int phil, long val) {
+    arrival.put(phil, val);
+  }
+
+  /**
+   * Return the seed a philosopher draws its next think and eat times from.
+   * @param phil Philosopher's index on table
+   * @return Seed made by Workload.newSeed() and moved on by Workload.nextSeed()
+   */
+  public long getSeed(int phil) {
+    return seed.get(phil);
+  }
+
+  public void setSeed(int phil, long val) {
+    seed.put(phil, val);
+  }
+
+  /**
+   * Mark a philosopher hungry from the given time on.
+   * @param phil Philosopher's index on table
+   * @param now Current time in milliseconds
+   */
+  public void startHungry(int phil, long now) {
+    state.put(phil, (byte) TableListener.HUNGRY);
+    hungrySince.put(phil, now);
+  }
+
+  public long getHungrySince(int phil) {
+    return hungrySince.get(phil);
+  }
+
+  /**
+   * Add the time a philosopher has been hungry up to now to its total.
+   * @param phil Philosopher's index on table
+   * @param now Current time in milliseconds
+   */
+  public void accrueHungry(int phil, long now) {
+    hungryTotal.put(phil, hungryTotal.get(phil) + now - hungrySince.get(phil));
+    hungrySince.put(phil, now);
+  }
+
+  /**
+   * Return a philosopher's accumulated hungry time.
+   * @param phil Philosopher's index on table
+   * @return hungry time in milliseconds
+   */
+  public long getHungryTime(int phil) {
+    return hungryTotal.get(phil);
+  }
+}
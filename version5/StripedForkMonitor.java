@@ -0,0 +1,97 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork arbiter with one lock and condition per fork instead of a single
+ * monitor for the whole table. A philosopher only touches the locks of its own
+ * two forks, so philosophers that are not neighbours never contend.
+ * @author David Lin
+ */
+public class StripedForkMonitor implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private boolean forks[];
+  private ReentrantLock locks[];
+  private Condition released[];
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public StripedForkMonitor(TableListener listener, int numForks) {
+    this.listener = listener;
+    forks = new boolean[numForks];
+    locks = new ReentrantLock[numForks];
+    released = new Condition[numForks];
+    for (int i = 0; i < numForks; i++) {
+      // true = available, false = taken
+      forks[i] = true;
+      locks[i] = new ReentrantLock();
+      released[i] = locks[i].newCondition();
+    }
+  }
+
+  /**
+   * Pick up both forks at once, waiting on whichever one is taken.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    // Always lock the lower numbered fork first so two neighbours can't deadlock
+    int first = Math.min(leftFork, rightFork);
+    int second = Math.max(leftFork, rightFork);
+    while (true) {
+      locks[first].lock();
+      locks[second].lock();
+      if (forks[first] && forks[second]) {
+        forks[first] = false;
+        forks[second] = false;
+        locks[second].unlock();
+        locks[first].unlock();
+        break;
+      }
+      // Keep only the lock of the taken fork and wait for it to come back
+      int busy = forks[first] ? second : first;
+      int other = (busy == first) ? second : first;
+      locks[other].unlock();
+      while (!forks[busy]) {
+        released[busy].awaitUninterruptibly();
+      }
+      locks[busy].unlock();
+    }
+    listener.setForkTaken(leftFork, phil);
+    listener.setForkTaken(rightFork, phil);
+  }
+
+  /**
+   * Put down left and right forks.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    listener.setForkAvailable(leftFork);
+    listener.setForkAvailable(rightFork);
+    release(leftFork);
+    release(rightFork);
+  }
+
+  /**
+   * Return a fork to the table and wake the neighbour waiting on it.
+   * @param fork Index of fork on table
+   */
+  private void release(int fork) {
+    locks[fork].lock();
+    try {
+      forks[fork] = true;
+      released[fork].signalAll();
+    }
+    finally {
+      locks[fork].unlock();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Receives what happens at a table: philosophers thinking, getting hungry and
+ * eating, and forks changing hands. Philosophers and fork arbiters only talk
+ * to this, so the engine runs the same whether the Swing display, an event log
+ * or nothing at all is listening. Calls come from philosopher threads, often
+ * while an arbiter holds its lock, so listeners must return quickly.
+ * @author David Lin
+ */
+public interface TableListener {
+
+  /** Philosopher states. */
+  int THINKING = 0;
+  int HUNGRY = 1;
+  int EATING = 2;
+
+  /** Listener that ignores everything. */
+  TableListener NONE = new TableListener() {
+    public void setPhilosopherState(int phil, int state) {
+    }
+
+    public void setForkTaken(int fork, int phil) {
+    }
+
+    public void setForkAvailable(int fork) {
+    }
+  };
+
+  /**
+   * A philosopher changed state.
+   * @param phil Philosopher's index on table
+   * @param state One of THINKING, HUNGRY or EATING
+   */
+  void setPhilosopherState(int phil, int state);
+
+  /**
+   * A philosopher took a fork.
+   * @param fork Index of fork on table
+   * @param phil Philosopher's index on table, either fork or fork + 1
+   */
+  void setForkTaken(int fork, int phil);
+
+  /**
+   * A fork was put back on the table.
+   * @param fork Index of fork on table
+   */
+  void setForkAvailable(int fork);
+}
@@ -0,0 +1,173 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of a running table, published as a JMX MBean. Philosophers
+ * count meals and hunger in striped LongAdders, so counting adds no contention
+ * to picking up and putting down forks. Queue length, waits and wakeups come
+ * from the fork arbiter and hungry time percentiles from the philosophers' own
+ * histograms, all read only when a JMX client asks. A client reads the
+ * percentiles one attribute at a time, so the merged histogram is kept for a
+ * second and shared by the getters rather than merged again for each.
+ * @author David Lin
+ */
+public class TableMetrics implements TableMetricsMBean {
+
+  /** How long a merged histogram answers the percentile getters. */
+  private static final long SNAPSHOT_NANOS = 1000000000L;
+
+  private String engine;
+  private ForkArbiter monitor;
+  private List<? extends Philosopher> philosophers;
+  private long startTime;
+
+  private LongAdder meals;
+  private LongAdder hungry;
+
+  /* Last merged histogram and when it was merged. */
+  private LatencyHistogram snapshot;
+  private long snapshotTime;
+
+  /**
+   * Create metrics for a table.
+   * @param engine Name of the fork arbitration engine
+   * @param monitor Fork arbiter shared by the philosophers
+   * @param philosophers Philosophers at the table, may still be filling up
+   */
+  public TableMetrics(String engine, ForkArbiter monitor, List<? extends Philosopher> philosophers) {
+    this.engine = engine;
+    this.monitor = monitor;
+    this.philosophers = philosophers;
+    this.startTime = System.nanoTime();
+    meals = new LongAdder();
+    hungry = new LongAdder();
+  }
+
+  /**
+   * Register with the platform MBean server as
+   * DiningPhilosophers:type=Table,engine=[engine].
+   */
+  public void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          new ObjectName("DiningPhilosophers:type=Table,engine=" + ObjectName.quote(engine)));
+    }
+    catch (JMException e) {
+      System.out.println("Cannot register table metrics: " + e.getMessage());
+    }
+  }
+
+  /**
+   * A philosopher got hungry.
+   */
+  public void hungry() {
+    hungry.increment();
+  }
+
+  /**
+   * A hungry philosopher got its forks.
+   */
+  public void ate() {
+    hungry.decrement();
+    meals.increment();
+  }
+
+  @Override
+  public String getEngine() {
+    return engine;
+  }
+
+  @Override
+  public long getMeals() {
+    return meals.sum();
+  }
+
+  @Override
+  public double getMealsPerSecond() {
+    double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+    return meals.sum() / seconds;
+  }
+
+  @Override
+  public long getHungryCount() {
+    return hungry.sum();
+  }
+
+  @Override
+  public int getQueueLength() {
+    return monitor.getQueueLength();
+  }
+
+  @Override
+  public long getWaitCount() {
+    return monitor.getWaitCount();
+  }
+
+  @Override
+  public long getWastedWakeups() {
+    return monitor.getWastedWakeups();
+  }
+
+  @Override
+  public double getHungryTimeP50() {
+    return recentHistogram().getValueAtPercentile(50.0) / 1000000.0;
+  }
+
+  @Override
+  public double getHungryTimeP90() {
+    return recentHistogram().getValueAtPercentile(90.0) / 1000000.0;
+  }
+
+  @Override
+  public double getHungryTimeP99() {
+    return recentHistogram().getValueAtPercentile(99.0) / 1000000.0;
+  }
+
+  @Override
+  public double getHungryTimeP999() {
+    return recentHistogram().getValueAtPercentile(99.9) / 1000000.0;
+  }
+
+  @Override
+  public double getHungryTimeMax() {
+    return recentHistogram().getMaxValue() / 1000000.0;
+  }
+
+  @Override
+  public String[] getPhilosopherHungryTimes() {
+    String lines[] = new String[philosophers.size()];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = philosophers.get(i).getHungryHistogram().formatPercentiles("Philosopher #" + i);
+    }
+    return lines;
+  }
+
+  /**
+   * Return a table-wide histogram merged at most a second ago.
+   * @return Shared histogram, not to be changed
+   */
+  private synchronized LatencyHistogram recentHistogram() {
+    long now = System.nanoTime();
+    if (snapshot == null || now - snapshotTime > SNAPSHOT_NANOS) {
+      snapshot = tableHistogram();
+      snapshotTime = now;
+    }
+    return snapshot;
+  }
+
+  /**
+   * Merge the philosophers' histograms. They are read while being written, so
+   * the result can be a meal or two behind.
+   * @return Table-wide hungry time histogram
+   */
+  public LatencyHistogram tableHistogram() {
+    LatencyHistogram table = new LatencyHistogram();
+    for (int i = 0; i < philosophers.size(); i++) {
+      table.add(philosophers.get(i).getHungryHistogram());
+    }
+    return table;
+  }
+}
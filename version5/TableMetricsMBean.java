@@ -0,0 +1,37 @@
+/**
+ * Live view of a running table, for jconsole or any other JMX client.
+ * Times are in milliseconds.
+ * @author David Lin
+ */
+public interface TableMetricsMBean {
+
+  String getEngine();
+
+  long getMeals();
+
+  double getMealsPerSecond();
+
+  long getHungryCount();
+
+  int getQueueLength();
+
+  long getWaitCount();
+
+  long getWastedWakeups();
+
+  double getHungryTimeP50();
+
+  double getHungryTimeP90();
+
+  double getHungryTimeP99();
+
+  double getHungryTimeP999();
+
+  double getHungryTimeMax();
+
+  /**
+   * Return hungry time percentiles of every philosopher, one line each.
+   * @return Percentiles by philosopher
+   */
+  String[] getPhilosopherHungryTimes();
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of a run, parsed once from the command line and never changed
+ * afterwards: table size, run time, fork arbitration engine, runtime, workload
+ * and what to report. Shared by DiningPhilosophersV5 and HeadlessRunner.
+ * @author David Lin
+ */
+public final class TableOptions {
+
+  /** Arguments common to every entry point, for usage messages. */
+  public static final String USAGE = "<# of philosophers (2 or more)> "
+      + "<# of seconds to run simulation (1 or more)> "
+      + "[engine=monitor|striped|cas|targeted|handoff|handoff-fifo|bypass|chandy-misra"
+      + "|ordered|waiter, default monitor, targeted for runtime=virtual] "
+      + "[runtime=platform|virtual|event|sim] "
+      + "[version=<ForkMonitor version 1-5 to simulate>] "
+      + "[bypass=<times a waiting philosopher can be overtaken>] "
+      + "[workload=uniform|exponential|pareto|trace:<file>] [seed=<seed>] "
+      + "[histogram=<file to export hungry time histogram to>] "
+      + "[metrics=<localhost port to serve Prometheus metrics on>] "
+      + "[log=none|[drop:]console|[drop:]file:<file>|[drop:]binary:<file>]";
+
+  private static final List<String> ENGINES = Arrays.asList("monitor", "striped", "cas",
+      "targeted", "handoff", "handoff-fifo", "bypass", "chandy-misra", "ordered", "waiter");
+  private static final List<String> RUNTIMES = Arrays.asList("platform", "virtual", "event",
+      "sim");
+
+  private final int numPhils;
+  private final int numSeconds;
+
+  /* Fork arbitration engine. */
+  private final String engine;
+  private final int bypassLimit;
+
+  /* Whether philosophers run on platform or virtual threads, or on an executor,
+   * or are simulated with a virtual clock using the policy of a ForkMonitor version. */
+  private final String runtime;
+  private final int simVersion;
+
+  /* Think and eat times, reproducible from the seed. */
+  private final Workload workload;
+
+  /* File to export the table-wide hungry time histogram to, null for none. */
+  private final String histogramFile;
+
+  /* Port to serve Prometheus metrics on, -1 for none. */
+  private final int metricsPort;
+
+  /* Where fork events are reported. */
+  private final String log;
+
+  /**
+   * Parse the command line.
+   * @param args Number of philosophers and seconds, followed by optional
+   *     name=value settings
+   * @throws IllegalArgumentException if an argument is missing, unknown or invalid
+   */
+  public TableOptions(String[] args) {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Missing arguments");
+    }
+    numPhils = parseInt(args[0]);
+    numSeconds = parseInt(args[1]);
+    if (numPhils < 2 || numSeconds < 1) {
+      throw new IllegalArgumentException("Need 2 or more philosophers and 1 or more seconds");
+    }
+
+    String engine = null;
+    int bypassLimit = 3;
+    String runtime = "platform";
+    int simVersion = 5;
+    String distribution = Workload.UNIFORM;
+    long seed = System.nanoTime();
+    String histogramFile = null;
+    int metricsPort = -1;
+    String log = "console";
+    for (int i = 2; i < args.length; i++) {
+      int split = args[i].indexOf('=');
+      if (split < 0) {
+        throw new IllegalArgumentException("Expected name=value: " + args[i]);
+      }
+      String name = args[i].substring(0, split);
+      String value = args[i].substring(split + 1);
+      if (name.equals("engine")) {
+        engine = value;
+      }
+      else if (name.equals("runtime")) {
+        runtime = value;
+      }
+      else if (name.equals("version")) {
+        simVersion = parseInt(value);
+      }
+      else if (name.equals("workload")) {
+        distribution = value;
+      }
+      else if (name.equals("seed")) {
+        try {
+          seed = Long.parseLong(value);
+        }
+        catch (NumberFormatException ex) {
+          throw new IllegalArgumentException("Not a number: " + value);
+        }
+      }
+      else if (name.equals("metrics")) {
+        metricsPort = parseInt(value);
+      }
+      else if (name.equals("log")) {
+        log = value;
+      }
+      else if (name.equals("histogram")) {
+        histogramFile = value;
+      }
+      else if (name.equals("bypass")) {
+        bypassLimit = parseInt(value);
+      }
+      else {
+        throw new IllegalArgumentException("Unknown setting: " + name);
+      }
+    }
+
+    if (engine == null) {
+      // Virtual threads get an engine that parks them on java.util.concurrent
+      // locks, rather than the default for platform threads
+      engine = runtime.equals("virtual") ? "targeted" : "monitor";
+    }
+    if (!ENGINES.contains(engine)) {
+      throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+    if (!RUNTIMES.contains(runtime)) {
+      throw new IllegalArgumentException("Unknown runtime: " + runtime);
+    }
+    if (runtime.equals("event") && !engine.startsWith("handoff")) {
+      throw new IllegalArgumentException(
+          "The event runtime needs engine=handoff or engine=handoff-fifo");
+    }
+    if (bypassLimit < 0) {
+      throw new IllegalArgumentException("Bypass limit must be 0 or more: " + bypassLimit);
+    }
+    if (simVersion < 1 || simVersion > 5) {
+      throw new IllegalArgumentException("Unknown ForkMonitor version: " + simVersion);
+    }
+    this.engine = engine;
+    this.bypassLimit = bypassLimit;
+    this.runtime = runtime;
+    this.simVersion = simVersion;
+    this.workload = createWorkload(distribution, seed);
+    this.histogramFile = histogramFile;
+    this.metricsPort = metricsPort;
+    this.log = log;
+  }
+
+  public int getNumPhils() {
+    return numPhils;
+  }
+
+  public int getNumSeconds() {
+    return numSeconds;
+  }
+
+  public String getEngine() {
+    return engine;
+  }
+
+  public int getBypassLimit() {
+    return bypassLimit;
+  }
+
+  public String getRuntime() {
+    return runtime;
+  }
+
+  /**
+   * Return whether the run is simulated with a virtual clock.
+   * @return true for runtime=sim
+   */
+  public boolean isSimulated() {
+    return runtime.equals("sim");
+  }
+
+  public int getSimVersion() {
+    return simVersion;
+  }
+
+  public Workload getWorkload() {
+    return workload;
+  }
+
+  public String getHistogramFile() {
+    return histogramFile;
+  }
+
+  public int getMetricsPort() {
+    return metricsPort;
+  }
+
+  public String getLog() {
+    return log;
+  }
+
+  /**
+   * Create the workload selected on the command line.
+   * @param distribution uniform, exponential, pareto or trace:[file]
+   * @param seed Master seed
+   * @return Workload with a stream for each philosopher
+   */
+  private static Workload createWorkload(String distribution, long seed) {
+    if (distribution.startsWith(Workload.TRACE + ":")) {
+      try {
+        return new Workload(distribution.substring(Workload.TRACE.length() + 1));
+      }
+      catch (IOException ex) {
+        throw new IllegalArgumentException("Cannot read trace: " + ex.getMessage());
+      }
+    }
+    if (!distribution.equals(Workload.UNIFORM) && !distribution.equals(Workload.EXPONENTIAL)
+        && !distribution.equals(Workload.PARETO)) {
+      throw new IllegalArgumentException("Unknown workload: " + distribution);
+    }
+    return new Workload(distribution, seed);
+  }
+
+  private static int parseInt(String value) {
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Not a number: " + value);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork monitor with one wait condition per philosopher. Like version5, a hungry
+ * philosopher eats as soon as both of its forks are free, but putting forks
+ * down only wakes the two neighbours that share them instead of the whole table.
+ * @author David Lin
+ */
+public class TargetedForkMonitor implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private int forks[];
+  private ReentrantLock lock;
+  private Condition philConditions[];
+  private boolean waiting[];
+
+  /** Wait and wakeup counters, readable without the lock. */
+  private LongAdder waits;
+  private LongAdder wakeups;
+  private LongAdder wastedWakeups;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public TargetedForkMonitor(TableListener listener, int numForks) {
+    this.listener = listener;
+    forks = new int[numForks];
+    lock = new ReentrantLock();
+    philConditions = new Condition[numForks];
+    waiting = new boolean[numForks];
+    waits = new LongAdder();
+    wakeups = new LongAdder();
+    wastedWakeups = new LongAdder();
+    for (int i = 0; i < forks.length; i++) {
+      // 1 = available, 0 = taken
+      forks[i] = 1;
+      philConditions[i] = lock.newCondition();
+    }
+  }
+
+  /**
+   * Pick up left and right forks when both are available.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      waiting[phil] = true;
+      while (forks[leftFork] == 0 || forks[rightFork] == 0) {
+        waits.increment();
+        philConditions[phil].awaitUninterruptibly();
+        wakeups.increment();
+        if (forks[leftFork] == 0 || forks[rightFork] == 0) {
+          wastedWakeups.increment();
+        }
+      }
+      waiting[phil] = false;
+      forks[leftFork] = 0;
+      forks[rightFork] = 0;
+      listener.setForkTaken(leftFork, phil);
+      listener.setForkTaken(rightFork, phil);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Put down left and right forks and wake the neighbours sharing them.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    lock.lock();
+    try {
+      forks[leftFork] = 1;
+      forks[rightFork] = 1;
+      listener.setForkAvailable(leftFork);
+      listener.setForkAvailable(rightFork);
+      // Fork i is shared by philosophers i and i + 1
+      wake((leftFork + 1) % forks.length);
+      wake(rightFork);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Signal a philosopher if it is waiting for forks.
+   * @param phil Philosopher's index on table
+   */
+  private void wake(int phil) {
+    if (waiting[phil]) {
+      philConditions[phil].signal();
+    }
+  }
+
+  /**
+   * Print wakeup counts.
+   */
+  @Override
+  public void printStats() {
+    System.out.println("Wakeups: " + wakeups.sum() + ", wasted: " + wastedWakeups.sum());
+  }
+
+  @Override
+  public long getWaitCount() {
+    return waits.sum();
+  }
+
+  @Override
+  public long getWastedWakeups() {
+    return wastedWakeups.sum();
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Think and eat time ranges in milliseconds. Immutable, so one instance can be
+ * shared by every philosopher and read without locking. A fixed Timing is its
+ * own TimingSource.
+ * @author David Lin
+ */
+public final class Timing implements TimingSource {
+
+  /** Ranges the display starts with. */
+  public static final Timing DEFAULT = new Timing(1000, 2000, 1000, 2000);
+
+  private final long minThinkTime;
+  private final long maxThinkTime;
+  private final long minEatTime;
+  private final long maxEatTime;
+
+  /**
+   * Create a timing.
+   * @param minThinkTime Minimum think time in milliseconds
+   * @param maxThinkTime Maximum think time in milliseconds
+   * @param minEatTime Minimum eat time in milliseconds
+   * @param maxEatTime Maximum eat time in milliseconds
+   * @throws IllegalArgumentException if a time is negative or a minimum exceeds its maximum
+   */
+  public Timing(long minThinkTime, long maxThinkTime, long minEatTime, long maxEatTime) {
+    if (minThinkTime < 0 || minEatTime < 0) {
+      throw new IllegalArgumentException("Negative time");
+    }
+    if (minThinkTime > maxThinkTime || minEatTime > maxEatTime) {
+      throw new IllegalArgumentException("Minimum time above maximum");
+    }
+    this.minThinkTime = minThinkTime;
+    this.maxThinkTime = maxThinkTime;
+    this.minEatTime = minEatTime;
+    this.maxEatTime = maxEatTime;
+  }
+
+  public long getMinThinkTime() {
+    return minThinkTime;
+  }
+
+  public long getMaxThinkTime() {
+    return maxThinkTime;
+  }
+
+  public long getMinEatTime() {
+    return minEatTime;
+  }
+
+  public long getMaxEatTime() {
+    return maxEatTime;
+  }
+
+  @Override
+  public Timing getTiming() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "Think time: " + minThinkTime + "-" + maxThinkTime + "ms, eat time: " + minEatTime
+        + "-" + maxEatTime + "ms";
+  }
+}
@@ -0,0 +1,15 @@
+/**
+ * Where philosophers get their think and eat time ranges from. The Swing
+ * display lets the user change them while the table runs; headless runs use a
+ * fixed Timing. Philosophers ask every cycle from their own threads, so an
+ * implementation should hand out a Timing it already has rather than build one.
+ * @author David Lin
+ */
+public interface TimingSource {
+
+  /**
+   * Return the current think and eat time ranges.
+   * @return Timing in effect now
+   */
+  Timing getTiming();
+}
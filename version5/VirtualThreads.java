@@ -0,0 +1,30 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads without requiring a JDK that has them at compile
+ * time. On JDK 21 and later this hands out a factory for virtual threads, on
+ * older JDKs it reports that they are unavailable.
+ * @author David Lin
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Return a factory that creates virtual threads.
+   * @return Virtual thread factory, or null if this JDK has no virtual threads
+   */
+  public static ThreadFactory factory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    }
+    catch (ReflectiveOperationException e) {
+      // Not available, or still a preview feature that isn't enabled
+      return null;
+    }
+  }
+}
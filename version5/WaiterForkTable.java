@@ -0,0 +1,82 @@
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fork arbiter using the waiter (arbitrator) solution. A counting semaphore lets
+ * at most N - 1 philosophers try for forks at once, so at least one of them can
+ * always get both, and the simple left-then-right pickup of version1 becomes
+ * deadlock free. The semaphore is the only thing all philosophers share; forks
+ * themselves are per-fork locks.
+ * @author David Lin
+ */
+public class WaiterForkTable implements ForkArbiter {
+
+  /** Monitor data items. */
+  private TableListener listener;
+  private ReentrantLock forks[];
+  private Semaphore waiter;
+
+  /** Time spent waiting to be seated by the waiter. */
+  private LongAdder admissions;
+  private LongAdder admissionWaitTime;
+
+  /**
+   * Initialize monitor data items.
+   * @param listener Told about state changes and forks changing hands
+   * @param numForks Number of forks on table
+   */
+  public WaiterForkTable(TableListener listener, int numForks) {
+    this.listener = listener;
+    forks = new ReentrantLock[numForks];
+    for (int i = 0; i < numForks; i++) {
+      forks[i] = new ReentrantLock();
+    }
+    waiter = new Semaphore(numForks - 1);
+    admissions = new LongAdder();
+    admissionWaitTime = new LongAdder();
+  }
+
+  /**
+   * Ask the waiter for a seat, then pick up left fork then right fork.
+   * @param phil Philosopher's index on table
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void pickupForks(int phil, int leftFork, int rightFork) {
+    long start = System.nanoTime();
+    waiter.acquireUninterruptibly();
+    admissionWaitTime.add(System.nanoTime() - start);
+    admissions.increment();
+
+    forks[leftFork].lock();
+    listener.setForkTaken(leftFork, phil);
+    forks[rightFork].lock();
+    listener.setForkTaken(rightFork, phil);
+  }
+
+  /**
+   * Put down left and right forks and give the seat back to the waiter.
+   * @param leftFork Index of philosopher's left fork on table
+   * @param rightFork Index of philosopher's right fork on table
+   */
+  @Override
+  public void putdownForks(int leftFork, int rightFork) {
+    listener.setForkAvailable(leftFork);
+    listener.setForkAvailable(rightFork);
+    forks[rightFork].unlock();
+    forks[leftFork].unlock();
+    waiter.release();
+  }
+
+  /**
+   * Print how long philosophers waited for the waiter.
+   */
+  @Override
+  public void printStats() {
+    long count = Math.max(1, admissions.sum());
+    System.out.println("Waiter admissions: " + admissions.sum() + ", average admission wait: "
+        + (admissionWaitTime.sum() / count / 1000000.0) + "ms");
+  }
+}
@@ -0,0 +1,259 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Think and eat times for a run. Every philosopher gets a stream of its own,
+ * split off one master seed, so nothing is shared between threads and a run
+ * with the same seed, table and engine draws the same times again. A
+ * single-threaded engine such as DiningSimulation keeps one long seed per seat
+ * instead of a stream object, and each seat's draws follow from its own seed
+ * whatever order the seats draw in, so two fork policies see the same times.
+ * <p>
+ * Distributions, all given the user-selected min and max:
+ * <ul>
+ * <li>uniform: between min and max, as the earlier versions do</li>
+ * <li>exponential: mean halfway between min and max</li>
+ * <li>pareto: heavy tailed with shape 2 and mean halfway between min and max,
+ *     capped at ten times max</li>
+ * <li>trace: think and eat milliseconds read from a file, one pair per line;
+ *     ignores min and max</li>
+ * </ul>
+ * @author David Lin
+ */
+public class Workload {
+
+  /** Supported distributions. */
+  public static final String UNIFORM = "uniform";
+  public static final String EXPONENTIAL = "exponential";
+  public static final String PARETO = "pareto";
+  public static final String TRACE = "trace";
+
+  private static final double PARETO_SHAPE = 2.0;
+
+  /** Step between successive draws of a seat seed, as in SplittableRandom. */
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private String distribution;
+  private boolean exponential;
+  private boolean pareto;
+  private long seed;
+  private SplittableRandom master;
+  private int streams;
+
+  /** Trace as think time, eat time pairs, null unless replaying a trace. */
+  private long trace[];
+
+  /**
+   * Create a workload drawing times from a distribution.
+   * @param distribution uniform, exponential or pareto
+   * @param seed Master seed
+   */
+  public Workload(String distribution, long seed) {
+    if (!distribution.equals(UNIFORM) && !distribution.equals(EXPONENTIAL)
+        && !distribution.equals(PARETO)) {
+      throw new IllegalArgumentException("Unknown distribution " + distribution);
+    }
+    this.distribution = distribution;
+    this.exponential = distribution.equals(EXPONENTIAL);
+    this.pareto = distribution.equals(PARETO);
+    this.seed = seed;
+    this.master = new SplittableRandom(seed);
+  }
+
+  /**
+   * Create a workload replaying a trace file. Each line holds a think time and
+   * an eat time in milliseconds; blank lines and lines starting with # are
+   * skipped.
+   * @param file Trace file name
+   * @throws IOException if the file cannot be read or holds no valid pair
+   */
+  public Workload(String file) throws IOException {
+    this.distribution = TRACE;
+    List<long[]> pairs = new ArrayList<long[]>();
+    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String fields[] = line.split("\\s+");
+        try {
+          pairs.add(new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          throw new IOException("Bad trace line: " + line);
+        }
+      }
+    }
+    if (pairs.isEmpty()) {
+      throw new IOException("Empty trace " + file);
+    }
+    trace = new long[pairs.size() * 2];
+    for (int i = 0; i < pairs.size(); i++) {
+      trace[2 * i] = pairs.get(i)[0];
+      trace[2 * i + 1] = pairs.get(i)[1];
+    }
+  }
+
+  /**
+   * Make the stream for the next philosopher. Streams are split off the master
+   * seed in the order they are made, so make them in seat order. Trace streams
+   * start at successive lines of the trace.
+   * @return Stream for one philosopher, not thread safe
+   */
+  public synchronized Stream newStream() {
+    if (trace != null) {
+      return new Stream(null, (streams++ % (trace.length / 2)) * 2);
+    }
+    streams++;
+    return new Stream(master.split(), 0);
+  }
+
+  /**
+   * Make the seed of the next seat, for an engine that keeps the seeds itself.
+   * Seeds are drawn off the master seed in the order they are made, so make
+   * them in seat order. Trace seeds start at successive lines of the trace.
+   * @return Seed for one seat, to pass to thinkTime, eatTime and nextSeed
+   */
+  public synchronized long newSeed() {
+    if (trace != null) {
+      return streams++ % (trace.length / 2);
+    }
+    streams++;
+    return master.nextLong();
+  }
+
+  /**
+   * Draw a seat's think time from its seed.
+   * @param seed Seat's current seed
+   * @param min Minimum time in milliseconds
+   * @param max Maximum time in milliseconds
+   * @return Time in milliseconds
+   */
+  public long thinkTime(long seed, long min, long max) {
+    if (trace != null) {
+      return trace[(int) seed * 2];
+    }
+    return draw(toDouble(seed + GOLDEN_GAMMA), min, max);
+  }
+
+  /**
+   * Draw a seat's eat time from its seed.
+   * @param seed Seat's current seed
+   * @param min Minimum time in milliseconds
+   * @param max Maximum time in milliseconds
+   * @return Time in milliseconds
+   */
+  public long eatTime(long seed, long min, long max) {
+    if (trace != null) {
+      return trace[(int) seed * 2 + 1];
+    }
+    return draw(toDouble(seed + 2 * GOLDEN_GAMMA), min, max);
+  }
+
+  /**
+   * Move a seat on to its next meal, once it has drawn a think and an eat time.
+   * @param seed Seat's current seed
+   * @return Seed for the next meal, a trace moves on to its next line
+   */
+  public long nextSeed(long seed) {
+    if (trace != null) {
+      return (seed + 1) % (trace.length / 2);
+    }
+    return seed + 2 * GOLDEN_GAMMA;
+  }
+
+  public String getDistribution() {
+    return distribution;
+  }
+
+  /**
+   * Describe the workload so the run can be repeated.
+   * @return Distribution and seed
+   */
+  @Override
+  public String toString() {
+    if (trace != null) {
+      return "Workload: trace of " + (trace.length / 2) + " meals";
+    }
+    return "Workload: " + distribution + ", seed: " + seed;
+  }
+
+  /**
+   * One philosopher's think and eat times.
+   */
+  public class Stream {
+    private SplittableRandom rand;
+    private int cursor;
+
+    private Stream(SplittableRandom rand, int cursor) {
+      this.rand = rand;
+      this.cursor = cursor;
+    }
+
+    /**
+     * Draw the next think time.
+     * @param min Minimum time in milliseconds
+     * @param max Maximum time in milliseconds
+     * @return Time in milliseconds
+     */
+    public long nextThinkTime(long min, long max) {
+      if (trace != null) {
+        return trace[cursor];
+      }
+      return draw(rand.nextDouble(), min, max);
+    }
+
+    /**
+     * Draw the next eat time, a trace moves on to its next line.
+     * @param min Minimum time in milliseconds
+     * @param max Maximum time in milliseconds
+     * @return Time in milliseconds
+     */
+    public long nextEatTime(long min, long max) {
+      if (trace != null) {
+        long time = trace[cursor + 1];
+        cursor = (cursor + 2) % trace.length;
+        return time;
+      }
+      return draw(rand.nextDouble(), min, max);
+    }
+  }
+
+  /**
+   * Turn a uniform draw into a time of the workload's distribution.
+   * @param u Uniform between 0 inclusive and 1 exclusive
+   * @param min Minimum time in milliseconds
+   * @param max Maximum time in milliseconds
+   * @return Time in milliseconds
+   */
+  private long draw(double u, long min, long max) {
+    double mean = (min + max) / 2.0;
+    if (exponential) {
+      return (long) (-mean * Math.log(1.0 - u));
+    }
+    if (pareto) {
+      double scale = mean * (PARETO_SHAPE - 1) / PARETO_SHAPE;
+      return (long) Math.min(10.0 * max, scale / Math.pow(1.0 - u, 1.0 / PARETO_SHAPE));
+    }
+    return min + (long) (u * (max - min));
+  }
+
+  /**
+   * Mix a seed into a uniform draw, with the SplitMix64 finalizer.
+   * @param state Seed moved on by a multiple of GOLDEN_GAMMA
+   * @return Uniform between 0 inclusive and 1 exclusive
+   */
+  private static double toDouble(long state) {
+    long z = state;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    z = z ^ (z >>> 31);
+    return (z >>> 11) * 0x1.0p-53;
+  }
+}